@@ -1,5 +1,6 @@
 package com.abahgat.suffixtree;
 
+import java.util.Arrays;
 import java.util.Random;
 import java.util.concurrent.TimeUnit;
 
@@ -57,6 +58,11 @@ public class JMHMemoryBenchmark {
         return tree;
     }
 
+    @Benchmark
+    public GeneralizedSuffixTree bulkLoadTree() {
+        return GeneralizedSuffixTree.bulkLoad(Arrays.asList(words));
+    }
+
     private static String generateRandomWord(int length, Random random) {
         StringBuilder word = new StringBuilder(length);
         for (int i = 0; i < length; i++) {
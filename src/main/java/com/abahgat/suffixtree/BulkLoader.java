@@ -0,0 +1,222 @@
+/**
+ * Copyright 2012 Alessandro Bahgat Shehata
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.abahgat.suffixtree;
+
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Builds a {@link GeneralizedSuffixTree} over many keys in parallel.
+ *
+ * Keys are split into contiguous partitions, and a tree is built over each partition
+ * on the {@link ForkJoinPool}. Trees are then merged pairwise, as the fork-join tasks
+ * complete: since partitions hold disjoint ranges of indexes, payloads of nodes
+ * denoting the same string are concatenated and result counts are added up.
+ *
+ * Suffix links of the merged tree are computed once all the partitions have been
+ * merged, so that the resulting tree can keep receiving keys with put.
+ */
+class BulkLoader {
+    /**
+     * The minimum number of keys a partition is made of
+     */
+    private static final int MIN_PARTITION_SIZE = 1024;
+    /**
+     * The number of partitions created for each thread of the pool, so that threads
+     * finishing early can steal work from slower ones
+     */
+    private static final int PARTITIONS_PER_THREAD = 4;
+
+    private BulkLoader() {
+    }
+
+    /**
+     * Builds a tree where each key is stored with its position in <tt>keys</tt> as index
+     */
+    static GeneralizedSuffixTree load(List<String> keys, ForkJoinPool pool) {
+        // merging costs more than it saves when there is a single thread
+        int partitions = pool.getParallelism() == 1 ? 1 : PARTITIONS_PER_THREAD * pool.getParallelism();
+        int partitionSize = Math.max(MIN_PARTITION_SIZE, keys.size() / partitions);
+        GeneralizedSuffixTree tree = pool.invoke(new BuildTask(keys, 0, keys.size(), partitionSize));
+        relink(tree.getRoot());
+        return tree;
+    }
+
+    /**
+     * Builds the tree over a range of keys, splitting it in halves built in parallel
+     * until it is small enough.
+     */
+    private static class BuildTask extends RecursiveTask<GeneralizedSuffixTree> {
+        private static final long serialVersionUID = 1L;
+
+        private final transient List<String> keys;
+        private final int from;
+        private final int to;
+        private final int partitionSize;
+
+        BuildTask(List<String> keys, int from, int to, int partitionSize) {
+            this.keys = keys;
+            this.from = from;
+            this.to = to;
+            this.partitionSize = partitionSize;
+        }
+
+        @Override
+        protected GeneralizedSuffixTree compute() {
+            if (to - from <= partitionSize) {
+                var tree = new GeneralizedSuffixTree();
+                for (int i = from; i < to; i++) {
+                    tree.put(keys.get(i), i);
+                }
+                return tree;
+            }
+            int middle = (from + to) >>> 1;
+            var left = new BuildTask(keys, from, middle, partitionSize);
+            left.fork();
+            GeneralizedSuffixTree right = new BuildTask(keys, middle, to, partitionSize).compute();
+            return merge(left.join(), right);
+        }
+    }
+
+    /**
+     * Merges <tt>right</tt> into <tt>left</tt>, reusing the nodes and edges of both.
+     *
+     * All the indexes in <tt>right</tt> must be greater than the ones in <tt>left</tt>.
+     * Suffix links of the merged tree are not valid until {@link #relink(Node)} is called.
+     *
+     * @return the merged tree
+     */
+    static GeneralizedSuffixTree merge(GeneralizedSuffixTree left, GeneralizedSuffixTree right) {
+        Node root = left.getRoot();
+        root.mergeCount(right.getRoot());
+
+        // pairs of (node of the merged tree, edge of right starting from the same string)
+        var nodes = new ArrayDeque<Node>();
+        var edges = new ArrayDeque<Edge>();
+        for (Edge e : right.getRoot().getEdges().values()) {
+            nodes.push(root);
+            edges.push(e);
+        }
+
+        while (!nodes.isEmpty()) {
+            Node node = nodes.pop();
+            Edge other = edges.pop();
+            Edge edge = node.getEdge(other.codePointAt(0));
+            if (edge == null) {
+                node.putEdge(other);
+                continue;
+            }
+
+            int common = commonPrefixLength(edge, other);
+            if (common < edge.length()) {
+                // split the edge where the labels diverge, the new node holding the same
+                // indexes as the destination of the edge
+                Node split = new Node();
+                Node dest = edge.getDest();
+                Edge lower = new Edge(edge.getSource(), edge.getStart() + common, edge.getEnd(), dest);
+                split.addEdge(lower.codePointAt(0), lower);
+                edge.setLabel(edge.getSource(), edge.getStart(), edge.getStart() + common);
+                edge.setDest(split);
+                node.putEdge(edge);
+            }
+
+            Node dest = edge.getDest();
+            if (common < other.length()) {
+                // the rest of the label of other continues below dest
+                dest.mergeCount(other.getDest());
+                other.setLabel(other.getSource(), other.getStart() + common, other.getEnd());
+                nodes.push(dest);
+                edges.push(other);
+            } else {
+                // both edges lead to the same string
+                dest.mergeCount(other.getDest());
+                dest.mergePayload(other.getDest());
+                for (Edge e : other.getDest().getEdges().values()) {
+                    nodes.push(dest);
+                    edges.push(e);
+                }
+            }
+        }
+
+        var merged = new GeneralizedSuffixTree(root, Math.max(left.getLast(), right.getLast()));
+        merged.getKeyTable().addAll(left.getKeyTable());
+        merged.getKeyTable().addAll(right.getKeyTable());
+        return merged;
+    }
+
+    /**
+     * Sets the suffix link of every node below <tt>root</tt>.
+     *
+     * Nodes are visited top-down, so that the suffix link of a node can be found by
+     * following its label from the suffix link of its parent, comparing only the first
+     * character of each edge.
+     */
+    static void relink(Node root) {
+        var nodes = new ArrayDeque<Node>();
+        nodes.push(root);
+        while (!nodes.isEmpty()) {
+            Node parent = nodes.pop();
+            for (Edge e : parent.getEdges().values()) {
+                Node node = e.getDest();
+                if (parent == root) {
+                    int first = Character.charCount(e.codePointAt(0));
+                    node.setSuffix(descend(root, e.getSource(), e.getStart() + first, e.getEnd()));
+                } else {
+                    node.setSuffix(descend(parent.getSuffix(), e.getSource(), e.getStart(), e.getEnd()));
+                }
+                nodes.push(node);
+            }
+        }
+    }
+
+    /**
+     * Returns the node reached by following <tt>source[start, end)</tt> from <tt>node</tt>,
+     * which must end on a node.
+     */
+    private static Node descend(Node node, String source, int start, int end) {
+        int i = start;
+        while (i < end) {
+            Edge e = node.getEdge(source.codePointAt(i));
+            if (e == null || e.length() > end - i) {
+                throw new IllegalStateException("Missing suffix node while merging trees");
+            }
+            node = e.getDest();
+            i += e.length();
+        }
+        return node;
+    }
+
+    /**
+     * Returns the length of the longest common prefix of the labels of two edges,
+     * ending on a code point boundary
+     */
+    private static int commonPrefixLength(Edge a, Edge b) {
+        int max = Math.min(a.length(), b.length());
+        String sourceA = a.getSource();
+        String sourceB = b.getSource();
+        int i = 0;
+        while (i < max && sourceA.charAt(a.getStart() + i) == sourceB.charAt(b.getStart() + i)) {
+            i++;
+        }
+        if (i < max && Character.isHighSurrogate(sourceA.charAt(a.getStart() + i - 1))) {
+            // do not split a surrogate pair
+            i--;
+        }
+        return i;
+    }
+}
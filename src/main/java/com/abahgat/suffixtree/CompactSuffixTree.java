@@ -0,0 +1,566 @@
+/**
+ * Copyright 2012 Alessandro Bahgat Shehata
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.abahgat.suffixtree;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.CharBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
+
+/**
+ * A read-only copy of a {@link GeneralizedSuffixTree}, stored as a set of primitive arrays
+ * (or buffers) instead of a graph of objects.
+ *
+ * Nodes and edges are identified by ints: nodes are numbered in depth-first order, with
+ * the root being 0, and every node but the root is the destination of exactly one edge,
+ * which takes the same number. All the attributes of nodes and edges (children, labels,
+ * suffix links, payloads) are stored in arrays indexed by these numbers, with no object
+ * header or pointer per element.
+ *
+ * Because of the numbering, the subtree of a node spans a contiguous range of numbers,
+ * and its payloads a contiguous range of the payload array: collecting the results of a
+ * search is a linear scan of memory.
+ *
+ * It supports the same search operations as the tree it is built from, and the same
+ * semantics; it does not support put.
+ *
+ * The arrays can be written to a file with {@link #writeTo(Path)}, in a flat layout that
+ * {@link #open(Path)} maps back into memory: queries are then answered directly from the
+ * mapped file, without loading it on the heap, and several processes opening the same
+ * file share a single copy of it in the page cache.
+ */
+public class CompactSuffixTree implements SuffixIndex {
+
+    /**
+     * The (shared) result of searches that do not match any key
+     */
+    private static final int[] NO_RESULTS = new int[0];
+    /**
+     * The first bytes of every file written by writeTo ("GSTC")
+     */
+    private static final int MAGIC = 0x47535443;
+    /**
+     * The version of the file format written by writeTo
+     */
+    private static final int VERSION = 1;
+    /**
+     * The number of int arrays (all but the text) stored in a file
+     */
+    private static final int INT_SECTIONS = 10;
+
+    /**
+     * The text all the edge labels are taken from
+     */
+    private final CharBuffer text;
+    /**
+     * For each edge, the start and end (exclusive) of its label within text
+     */
+    private final IntBuffer labelStart;
+    private final IntBuffer labelEnd;
+    /**
+     * For each node, the position in children of its first child.
+     * The children of node n are in children[childStart[n]] .. children[childStart[n + 1] - 1]
+     */
+    private final IntBuffer childStart;
+    /**
+     * The children of every node, each group sorted by the first code point of its label
+     */
+    private final IntBuffer children;
+    /**
+     * The first code point of the label of the edge in the same position in children
+     */
+    private final IntBuffer childCodePoints;
+    /**
+     * For each node, the first number after the end of its subtree
+     */
+    private final IntBuffer subtreeEnd;
+    /**
+     * For each node, the node its suffix link points to, or -1
+     */
+    private final IntBuffer suffixLinks;
+    /**
+     * For each node, the position in payloads of its first index.
+     * The payload of node n is in payloads[payloadStart[n]] .. payloads[payloadStart[n + 1] - 1]
+     */
+    private final IntBuffer payloadStart;
+    /**
+     * The payloads of all the nodes
+     */
+    private final IntBuffer payloads;
+    /**
+     * For each node, the number of distinct indexes in its subtree
+     */
+    private final IntBuffer resultCounts;
+
+    /**
+     * Creates a compact copy of the given tree.
+     *
+     * The copy does not share any mutable state with <tt>tree</tt>, which can be
+     * modified (or discarded) afterwards.
+     *
+     * @param tree the tree to copy
+     */
+    public CompactSuffixTree(GeneralizedSuffixTree tree) {
+        // number nodes in depth-first order, remembering the edge leading to each
+        List<Node> nodes = new ArrayList<>();
+        List<Edge> incoming = new ArrayList<>();
+        Map<Node, Integer> ids = new IdentityHashMap<>();
+        var stack = new ArrayDeque<Edge>();
+        Node root = tree.getRoot();
+        ids.put(root, 0);
+        nodes.add(root);
+        incoming.add(null);
+        pushChildren(root, stack);
+        while (!stack.isEmpty()) {
+            Edge e = stack.pop();
+            ids.put(e.getDest(), nodes.size());
+            nodes.add(e.getDest());
+            incoming.add(e);
+            pushChildren(e.getDest(), stack);
+        }
+
+        int nodeCount = nodes.size();
+        int[] labelStart = new int[nodeCount];
+        int[] labelEnd = new int[nodeCount];
+        int[] childStart = new int[nodeCount + 1];
+        int[] children = new int[nodeCount - 1];
+        int[] childCodePoints = new int[nodeCount - 1];
+        int[] subtreeEnd = new int[nodeCount];
+        int[] suffixLinks = new int[nodeCount];
+        int[] payloadStart = new int[nodeCount + 1];
+        int[] resultCounts = new int[nodeCount];
+
+        // copy edge labels, storing each source string only once
+        Map<String, Integer> sources = new IdentityHashMap<>();
+        var textBuilder = new StringBuilder();
+        for (int n = 1; n < nodeCount; n++) {
+            Edge e = incoming.get(n);
+            Integer offset = sources.get(e.getSource());
+            if (offset == null) {
+                offset = textBuilder.length();
+                sources.put(e.getSource(), offset);
+                textBuilder.append(e.getSource());
+            }
+            labelStart[n] = offset + e.getStart();
+            labelEnd[n] = offset + e.getEnd();
+        }
+
+        int childCount = 0;
+        int payloadCount = 0;
+        for (int n = 0; n < nodeCount; n++) {
+            Node node = nodes.get(n);
+            childStart[n] = childCount;
+            for (Edge e : sortedEdges(node)) {
+                children[childCount] = ids.get(e.getDest());
+                childCodePoints[childCount] = e.codePointAt(0);
+                childCount++;
+            }
+            payloadStart[n] = payloadCount;
+            payloadCount += node.payloadSize();
+            suffixLinks[n] = node.getSuffix() == null ? -1 : ids.getOrDefault(node.getSuffix(), -1);
+            resultCounts[n] = node.getResultCount();
+        }
+        childStart[nodeCount] = childCount;
+        payloadStart[nodeCount] = payloadCount;
+
+        int[] payloads = new int[payloadCount];
+        for (int n = 0; n < nodeCount; n++) {
+            var it = nodes.get(n).payload();
+            for (int i = payloadStart[n]; it.hasNext(); i++) {
+                payloads[i] = it.nextInt();
+            }
+        }
+
+        // children come after their parent: walk backwards to compute subtree sizes
+        for (int n = nodeCount - 1; n >= 0; n--) {
+            int end = n + 1;
+            for (int c = childStart[n]; c < childStart[n + 1]; c++) {
+                end = Math.max(end, subtreeEnd[children[c]]);
+            }
+            subtreeEnd[n] = end;
+        }
+
+        this.text = CharBuffer.wrap(textBuilder.toString().toCharArray());
+        this.labelStart = IntBuffer.wrap(labelStart);
+        this.labelEnd = IntBuffer.wrap(labelEnd);
+        this.childStart = IntBuffer.wrap(childStart);
+        this.children = IntBuffer.wrap(children);
+        this.childCodePoints = IntBuffer.wrap(childCodePoints);
+        this.subtreeEnd = IntBuffer.wrap(subtreeEnd);
+        this.suffixLinks = IntBuffer.wrap(suffixLinks);
+        this.payloadStart = IntBuffer.wrap(payloadStart);
+        this.payloads = IntBuffer.wrap(payloads);
+        this.resultCounts = IntBuffer.wrap(resultCounts);
+    }
+
+    /**
+     * Creates a tree reading its arrays from the given buffers
+     */
+    private CompactSuffixTree(IntBuffer[] sections, CharBuffer text) {
+        this.labelStart = sections[0];
+        this.labelEnd = sections[1];
+        this.childStart = sections[2];
+        this.children = sections[3];
+        this.childCodePoints = sections[4];
+        this.subtreeEnd = sections[5];
+        this.suffixLinks = sections[6];
+        this.payloadStart = sections[7];
+        this.payloads = sections[8];
+        this.resultCounts = sections[9];
+        this.text = text;
+    }
+
+    /**
+     * Opens a tree that was written to the given file using {@link #writeTo(Path)}.
+     *
+     * The file is mapped in memory rather than read: the returned tree does not keep
+     * any of its nodes or payloads on the heap, and the operating system is free to
+     * page the file in and out as needed. The file must not be modified while the
+     * returned tree is in use.
+     *
+     * @param path the file to open
+     * @return a tree reading its contents from the file
+     * @throws IOException if the file cannot be read, or was not written by writeTo
+     */
+    public static CompactSuffixTree open(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            int headerSize = 4 * (3 + INT_SECTIONS);
+            if (channel.size() < headerSize) {
+                throw new IOException(path + " is not a compact suffix tree file");
+            }
+            IntBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, headerSize)
+                    .order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+            if (header.get(0) != MAGIC) {
+                throw new IOException(path + " is not a compact suffix tree file");
+            }
+            if (header.get(1) != VERSION) {
+                throw new IOException("Unsupported version " + header.get(1) + " of " + path);
+            }
+
+            long offset = headerSize;
+            var sections = new IntBuffer[INT_SECTIONS];
+            for (int i = 0; i < INT_SECTIONS; i++) {
+                long size = 4L * header.get(2 + i);
+                sections[i] = map(channel, offset, size).asIntBuffer();
+                offset += size;
+            }
+            long textSize = 2L * header.get(2 + INT_SECTIONS);
+            CharBuffer text = map(channel, offset, textSize).asCharBuffer();
+            if (offset + textSize != channel.size()) {
+                throw new IOException(path + " is truncated or corrupted");
+            }
+            return new CompactSuffixTree(sections, text);
+        }
+    }
+
+    /**
+     * Writes this tree to the given file, which can later be opened with {@link #open(Path)}.
+     *
+     * @param path the file to write, replaced if it already exists
+     * @throws IOException if the file cannot be written
+     */
+    public void writeTo(Path path) throws IOException {
+        try (OutputStream out = Files.newOutputStream(path)) {
+            writeTo(out);
+        }
+    }
+
+    /**
+     * Writes this tree to the given stream, in the format expected by {@link #open(Path)}.
+     *
+     * All numbers are written as little-endian ints: a header made of a magic number,
+     * the format version and the length of each array, followed by the int arrays and
+     * finally by the text, as UTF-16 code units.
+     *
+     * @param out the stream to write to, which is not closed
+     * @throws IOException if the stream cannot be written
+     */
+    public void writeTo(OutputStream out) throws IOException {
+        IntBuffer[] sections = {
+                labelStart, labelEnd, childStart, children, childCodePoints,
+                subtreeEnd, suffixLinks, payloadStart, payloads, resultCounts };
+        WritableByteChannel channel = Channels.newChannel(out);
+        ByteBuffer buffer = ByteBuffer.allocate(1 << 16).order(ByteOrder.LITTLE_ENDIAN);
+
+        buffer.putInt(MAGIC);
+        buffer.putInt(VERSION);
+        for (IntBuffer section : sections) {
+            buffer.putInt(section.limit());
+        }
+        buffer.putInt(text.limit());
+
+        for (IntBuffer section : sections) {
+            for (int i = 0; i < section.limit(); i++) {
+                if (buffer.remaining() < 4) {
+                    flush(buffer, channel);
+                }
+                buffer.putInt(section.get(i));
+            }
+        }
+        for (int i = 0; i < text.limit(); i++) {
+            if (buffer.remaining() < 2) {
+                flush(buffer, channel);
+            }
+            buffer.putChar(text.get(i));
+        }
+        flush(buffer, channel);
+        out.flush();
+    }
+
+    /**
+     * Searches for the given word within the tree.
+     *
+     * @param word the key to search for
+     * @return the collection of indexes associated with the input <tt>word</tt>
+     * @see GeneralizedSuffixTree#search(String)
+     */
+    public Collection<Integer> search(String word) {
+        return search(word, -1);
+    }
+
+    /**
+     * Searches for the given word within the tree and returns at most the given number of matches.
+     *
+     * @param word the key to search for
+     * @param results the max number of results to return
+     * @return at most <tt>results</tt> values for the given word
+     * @see GeneralizedSuffixTree#search(String, int)
+     */
+    public Collection<Integer> search(String word, int results) {
+        int node = searchNode(word);
+        if (node < 0) {
+            return IntSet.modifiableSet(NO_RESULTS);
+        }
+        return collect(node, results, null).toModifiableSet();
+    }
+
+    /**
+     * Searches for the given word within the tree, returning the indexes found as native ints.
+     *
+     * @param word the key to search for
+     * @return the indexes associated with the input <tt>word</tt>
+     * @see GeneralizedSuffixTree#searchInts(String)
+     */
+    public int[] searchInts(String word) {
+        return searchInts(word, -1);
+    }
+
+    /**
+     * Searches for the given word within the tree and returns at most the given number of
+     * matches, as native ints.
+     *
+     * @param word the key to search for
+     * @param results the max number of results to return
+     * @return at most <tt>results</tt> indexes for the given word
+     * @see GeneralizedSuffixTree#searchInts(String, int)
+     */
+    public int[] searchInts(String word, int results) {
+        int node = searchNode(word);
+        if (node < 0) {
+            return NO_RESULTS;
+        }
+        return collect(node, results, null).toIntArray();
+    }
+
+    /**
+     * Searches for the given word within the tree, passing each of the indexes found to
+     * <tt>action</tt>.
+     *
+     * @param word the key to search for
+     * @param action the callback receiving every index associated with <tt>word</tt>
+     * @see GeneralizedSuffixTree#search(String, IntConsumer)
+     */
+    public void search(String word, IntConsumer action) {
+        search(word, -1, action);
+    }
+
+    /**
+     * Searches for the given word within the tree, passing at most the given number of
+     * matches to <tt>action</tt>.
+     *
+     * @param word the key to search for
+     * @param results the max number of results to return
+     * @param action the callback receiving the indexes associated with <tt>word</tt>
+     * @see GeneralizedSuffixTree#search(String, int, IntConsumer)
+     */
+    public void search(String word, int results, IntConsumer action) {
+        int node = searchNode(word);
+        if (node >= 0) {
+            collect(node, results, action);
+        }
+    }
+
+    /**
+     * Searches for the given word within the tree, returning the indexes found as a stream.
+     *
+     * @param word the key to search for
+     * @return a stream of the indexes associated with the input <tt>word</tt>
+     * @see GeneralizedSuffixTree#searchStream(String)
+     */
+    public IntStream searchStream(String word) {
+        return IntStream.of(searchInts(word));
+    }
+
+    /**
+     * Searches for the given word within the tree and returns at most the given number of
+     * matches, together with the total number of matches.
+     *
+     * @param word the key to search for
+     * @param to the max number of results to return
+     * @return at most <tt>to</tt> values for the given word, and the total number of values
+     * @see GeneralizedSuffixTree#searchWithCount(String, int)
+     */
+    public GeneralizedSuffixTree.ResultInfo searchWithCount(String word, int to) {
+        int node = searchNode(word);
+        if (node < 0) {
+            return new GeneralizedSuffixTree.ResultInfo(IntSet.modifiableSet(NO_RESULTS), 0);
+        }
+        return new GeneralizedSuffixTree.ResultInfo(collect(node, to, null).toModifiableSet(), resultCounts.get(node));
+    }
+
+    /**
+     * Returns the number of distinct indexes stored in the tree.
+     *
+     * @see GeneralizedSuffixTree#computeCount()
+     */
+    public int computeCount() {
+        return resultCounts.get(0);
+    }
+
+    /**
+     * Returns the number of nodes in the tree
+     */
+    int nodeCount() {
+        return subtreeEnd.limit();
+    }
+
+    /**
+     * Returns the node the suffix link of <tt>node</tt> points to, or -1 if there is none
+     */
+    int suffixLink(int node) {
+        return suffixLinks.get(node);
+    }
+
+    /**
+     * Returns the number (if present) of the node that corresponds to the given string,
+     * or -1.
+     *
+     * @see GeneralizedSuffixTree#search(String)
+     */
+    private int searchNode(String word) {
+        int node = 0;
+        int i = 0;
+        while (i < word.length()) {
+            int ch = word.codePointAt(i);
+            int child = findChild(node, ch);
+            if (child < 0) {
+                return -1;
+            }
+            int start = labelStart.get(child);
+            int lenToMatch = Math.min(word.length() - i, labelEnd.get(child) - start);
+            for (int j = 0; j < lenToMatch; j++) {
+                if (text.get(start + j) != word.charAt(i + j)) {
+                    return -1;
+                }
+            }
+            i += lenToMatch;
+            node = child;
+        }
+        return i == 0 ? -1 : node;
+    }
+
+    /**
+     * Returns the child of <tt>node</tt> whose label starts with the given code point, or -1
+     */
+    private int findChild(int node, int codePoint) {
+        int low = childStart.get(node);
+        int high = childStart.get(node + 1) - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int midVal = childCodePoints.get(mid);
+            if (midVal < codePoint) {
+                low = mid + 1;
+            } else if (midVal > codePoint) {
+                high = mid - 1;
+            } else {
+                return children.get(mid);
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Collects the first <tt>limit</tt> distinct indexes in the subtree of <tt>node</tt>,
+     * passing each of them to <tt>action</tt>, if not null.
+     */
+    private IntSet collect(int node, int limit, IntConsumer action) {
+        var ret = new IntSet();
+        int end = payloadStart.get(subtreeEnd.get(node));
+        for (int i = payloadStart.get(node); i < end && ret.size() != limit; i++) {
+            int index = payloads.get(i);
+            if (ret.add(index) && action != null) {
+                action.accept(index);
+            }
+        }
+        return ret;
+    }
+
+    private static ByteBuffer map(FileChannel channel, long offset, long size) throws IOException {
+        if (offset + size > channel.size()) {
+            throw new IOException("Compact suffix tree file is truncated");
+        }
+        return channel.map(FileChannel.MapMode.READ_ONLY, offset, size).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    private static void flush(ByteBuffer buffer, WritableByteChannel channel) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    private static void pushChildren(Node node, ArrayDeque<Edge> stack) {
+        List<Edge> edges = sortedEdges(node);
+        // push in reverse order, so that children are numbered in order
+        for (int i = edges.size() - 1; i >= 0; i--) {
+            stack.push(edges.get(i));
+        }
+    }
+
+    private static List<Edge> sortedEdges(Node node) {
+        List<Edge> edges = new ArrayList<>(node.getEdges().values());
+        edges.sort(Comparator.comparingInt(e -> e.codePointAt(0)));
+        return edges;
+    }
+}
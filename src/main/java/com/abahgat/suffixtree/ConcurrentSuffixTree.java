@@ -0,0 +1,372 @@
+/**
+ * Copyright 2012 Alessandro Bahgat Shehata
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.abahgat.suffixtree;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Collection;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.IntConsumer;
+
+/**
+ * A thread-safe {@link GeneralizedSuffixTree}, where searches never block and run
+ * concurrently with a writer.
+ *
+ * It follows the Left-Right technique: two copies of the tree are kept, readers search
+ * the one that is currently published while the writer modifies the other one. Once
+ * modified, the other copy is published and, after the readers still searching the
+ * previous copy are done, the same modifications are applied to it.
+ *
+ * As a result:
+ * <ul>
+ *     <li>searches are wait-free: they only increment a counter when they start and
+ *     another one when they end, and always see the tree as it was after a whole call
+ *     to put or putAll</li>
+ *     <li>searches scale across cores, as readers do not write any shared state but
+ *     those counters, which are striped {@link LongAdder}s</li>
+ *     <li>writes are serialized, and each of them is applied twice. putAll publishes
+ *     many keys at once, so that waiting for readers is amortized over all of them</li>
+ *     <li>the tree takes twice as much memory</li>
+ * </ul>
+ */
+public class ConcurrentSuffixTree implements SuffixIndex {
+    /**
+     * The two copies of the tree
+     */
+    private final GeneralizedSuffixTree[] trees;
+    /**
+     * The position of the published copy in trees
+     */
+    private volatile int published = 0;
+    /**
+     * The counters of the readers, used in turns by readers starting while a write is
+     * in progress
+     */
+    private final ReadIndicator[] readIndicators = { new ReadIndicator(), new ReadIndicator() };
+    /**
+     * The position of the indicator new readers arrive at
+     */
+    private volatile int versionIndex = 0;
+    /**
+     * Serializes writers
+     */
+    private final ReentrantLock writeLock = new ReentrantLock();
+
+    /**
+     * Creates an empty tree
+     */
+    public ConcurrentSuffixTree() {
+        this.trees = new GeneralizedSuffixTree[] { new GeneralizedSuffixTree(), new GeneralizedSuffixTree() };
+    }
+
+    /**
+     * Creates a tree with the same contents of <tt>tree</tt>, as built by
+     * {@link GeneralizedSuffixTree#bulkLoad(List)} or restored from a snapshot.
+     *
+     * The given tree becomes one of the two copies and must not be used afterwards,
+     * the other copy is obtained from a snapshot of it.
+     *
+     * @param tree the initial contents of the tree
+     */
+    public ConcurrentSuffixTree(GeneralizedSuffixTree tree) {
+        this.trees = new GeneralizedSuffixTree[] { tree, copyOf(tree) };
+    }
+
+    /**
+     * Adds the specified <tt>index</tt> to the tree under the given <tt>key</tt>, and
+     * publishes it to readers.
+     *
+     * @see GeneralizedSuffixTree#put(String, int)
+     */
+    public void put(String key, int index) {
+        // checked before modifying any of the copies, so that they cannot diverge
+        Objects.requireNonNull(key);
+        write(tree -> tree.put(key, index));
+    }
+
+    /**
+     * Adds the specified <tt>index</tt> to the tree under the given <tt>key</tt>, with the
+     * given weight, and publishes it to readers.
+     *
+     * @see GeneralizedSuffixTree#put(String, int, float)
+     */
+    public void put(String key, int index, float weight) {
+        Objects.requireNonNull(key);
+        // an invalid weight is rejected by the first copy, before modifying it
+        write(tree -> tree.put(key, index, weight));
+    }
+
+    /**
+     * Adds all the <tt>keys</tt>, using <tt>firstIndex + i</tt> as the index of the key
+     * in position <tt>i</tt>, and publishes them to readers at once.
+     *
+     * @param keys the keys to add
+     * @param firstIndex the index of the first key
+     */
+    public void putAll(List<String> keys, int firstIndex) {
+        keys.forEach(Objects::requireNonNull);
+        write(tree -> {
+            for (int i = 0; i < keys.size(); i++) {
+                tree.put(keys.get(i), firstIndex + i);
+            }
+        });
+    }
+
+    /**
+     * @see GeneralizedSuffixTree#search(String)
+     */
+    public Collection<Integer> search(String word) {
+        return read(tree -> tree.search(word));
+    }
+
+    /**
+     * @see GeneralizedSuffixTree#search(String, int)
+     */
+    public Collection<Integer> search(String word, int results) {
+        return read(tree -> tree.search(word, results));
+    }
+
+    /**
+     * @see GeneralizedSuffixTree#searchInts(String)
+     */
+    public int[] searchInts(String word) {
+        return read(tree -> tree.searchInts(word));
+    }
+
+    /**
+     * @see GeneralizedSuffixTree#searchInts(String, int)
+     */
+    public int[] searchInts(String word, int results) {
+        return read(tree -> tree.searchInts(word, results));
+    }
+
+    /**
+     * Searches for all the given words on the same copy of the tree, so that results are
+     * consistent across words.
+     *
+     * @see GeneralizedSuffixTree#searchAll(List, int)
+     */
+    public int[][] searchAll(List<String> words, int results) {
+        return read(tree -> tree.searchAll(words, results));
+    }
+
+    /**
+     * @see GeneralizedSuffixTree#search(String, IntConsumer)
+     */
+    public void search(String word, IntConsumer action) {
+        search(word, -1, action);
+    }
+
+    /**
+     * Searches for the given word, passing each of the indexes found to <tt>action</tt>.
+     *
+     * The action is run while reading the tree: while it does not block writers,
+     * a slow action delays the replay of the next write.
+     *
+     * @see GeneralizedSuffixTree#search(String, int, IntConsumer)
+     */
+    public void search(String word, int results, IntConsumer action) {
+        read(tree -> {
+            tree.search(word, results, action);
+            return null;
+        });
+    }
+
+    /**
+     * @see GeneralizedSuffixTree#searchPrefix(String, int)
+     */
+    public Collection<Integer> searchPrefix(String word, int results) {
+        return read(tree -> tree.searchPrefix(word, results));
+    }
+
+    /**
+     * @see GeneralizedSuffixTree#searchSuffix(String, int)
+     */
+    public Collection<Integer> searchSuffix(String word, int results) {
+        return read(tree -> tree.searchSuffix(word, results));
+    }
+
+    /**
+     * @see GeneralizedSuffixTree#searchTopK(String, int)
+     */
+    public int[] searchTopK(String word, int results) {
+        return read(tree -> tree.searchTopK(word, results));
+    }
+
+    /**
+     * @see GeneralizedSuffixTree#searchOccurrences(String, int)
+     */
+    public Occurrences searchOccurrences(String word, int results) {
+        return read(tree -> tree.searchOccurrences(word, results));
+    }
+
+    /**
+     * @see GeneralizedSuffixTree#searchApprox(String, int, int)
+     */
+    public Collection<Integer> searchApprox(String word, int maxEdits, int results) {
+        return read(tree -> tree.searchApprox(word, maxEdits, results));
+    }
+
+    /**
+     * @see GeneralizedSuffixTree#searchPattern(String, int)
+     */
+    public Collection<Integer> searchPattern(String pattern, int results) {
+        return read(tree -> tree.searchPattern(pattern, results));
+    }
+
+    /**
+     * @see GeneralizedSuffixTree#longestCommonSubstring(int)
+     */
+    public String longestCommonSubstring(int minKeys) {
+        return read(tree -> tree.longestCommonSubstring(minKeys));
+    }
+
+    /**
+     * @see GeneralizedSuffixTree#getWeight(int)
+     */
+    public float getWeight(int index) {
+        return read(tree -> tree.getWeight(index));
+    }
+
+    /**
+     * @see GeneralizedSuffixTree#searchWithCount(String, int)
+     */
+    public GeneralizedSuffixTree.ResultInfo searchWithCount(String word, int to) {
+        return read(tree -> tree.searchWithCount(word, to));
+    }
+
+    /**
+     * @see GeneralizedSuffixTree#computeCount()
+     */
+    public int computeCount() {
+        return read(GeneralizedSuffixTree::computeCount);
+    }
+
+    /**
+     * Removes the given <tt>index</tt> from the tree, and publishes the removal to readers.
+     *
+     * @see GeneralizedSuffixTree#remove(int)
+     */
+    public void remove(int index) {
+        write(tree -> tree.remove(index));
+    }
+
+    /**
+     * Runs <tt>search</tt> on the published copy of the tree.
+     *
+     * Results are fully computed before leaving, as the copy may be modified as
+     * soon as the reader is done.
+     */
+    private <T> T read(Function<GeneralizedSuffixTree, T> search) {
+        ReadIndicator indicator = readIndicators[versionIndex];
+        indicator.arrive();
+        try {
+            return search.apply(trees[published]);
+        } finally {
+            indicator.depart();
+        }
+    }
+
+    /**
+     * Applies <tt>update</tt> to the copy readers are not using, publishes it and
+     * then applies <tt>update</tt> to the other copy as well.
+     *
+     * @param update a deterministic modification, giving the same result on both copies
+     */
+    private void write(Consumer<GeneralizedSuffixTree> update) {
+        writeLock.lock();
+        try {
+            int current = published;
+            update.accept(trees[1 - current]);
+            published = 1 - current;
+            waitForReaders();
+            update.accept(trees[current]);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Waits until no reader can be using the copy of the tree that was published
+     * before the last switch.
+     *
+     * New readers are sent to the other indicator before waiting on the current one, so
+     * that a continuous flow of readers cannot keep the writer waiting forever.
+     */
+    private void waitForReaders() {
+        int previous = versionIndex;
+        int next = 1 - previous;
+        // readers that arrived at next before the previous switch may still be around
+        readIndicators[next].awaitEmpty();
+        versionIndex = next;
+        readIndicators[previous].awaitEmpty();
+    }
+
+    private static GeneralizedSuffixTree copyOf(GeneralizedSuffixTree tree) {
+        try {
+            var out = new ByteArrayOutputStream();
+            tree.writeTo(out);
+            return GeneralizedSuffixTree.readFrom(new ByteArrayInputStream(out.toByteArray()));
+        } catch (IOException e) {
+            // streams are in memory
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Counts the readers that arrived and the ones that departed, using striped counters
+     * so that readers on different cores do not contend on the same memory location.
+     */
+    private static class ReadIndicator {
+        /**
+         * The number of times the writer spins before yielding, while waiting for readers
+         */
+        private static final int MAX_SPINS = 100;
+        private final LongAdder ingress = new LongAdder();
+        private final LongAdder egress = new LongAdder();
+
+        void arrive() {
+            ingress.increment();
+        }
+
+        void depart() {
+            egress.increment();
+        }
+
+        /**
+         * Waits until every reader that arrived has departed.
+         */
+        void awaitEmpty() {
+            // egress must be read first: a reader departing between the two sums can
+            // only make ingress look larger
+            for (int spins = 0; egress.sum() != ingress.sum(); spins++) {
+                if (spins < MAX_SPINS) {
+                    Thread.onSpinWait();
+                } else {
+                    // readers may have been descheduled
+                    Thread.yield();
+                }
+            }
+        }
+    }
+}
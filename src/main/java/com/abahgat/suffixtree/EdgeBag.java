@@ -32,8 +32,10 @@ class EdgeBag implements Map<Integer, Edge> {
 
     @Override
     public Edge put(Integer character, Edge e) {
-        int c = character.intValue();
-        
+        return put(character.intValue(), e);
+    }
+
+    public Edge put(int c, Edge e) {
         if (codePoints == null) {
             codePoints = new int[0];
             values = new Edge[0];
@@ -75,6 +77,14 @@ class EdgeBag implements Map<Integer, Edge> {
         return values[idx];
     }
 
+    /**
+     * Returns the edge stored in the given position.
+     * Positions range from 0 to size() - 1 and follow the same order as values().
+     */
+    Edge valueAt(int position) {
+        return values[position];
+    }
+
     private int search(int c) {
         if (codePoints == null)
             return -1;
@@ -149,7 +159,30 @@ class EdgeBag implements Map<Integer, Edge> {
     
     @Override
     public Edge remove(Object key) {
-        throw new UnsupportedOperationException("Not implemented");
+        return remove(((Integer) key).intValue());  // throws if cast fails.
+    }
+
+    /**
+     * Removes the edge starting with the given code point, keeping the others in order.
+     *
+     * @return the edge removed, or null if there was none
+     */
+    public Edge remove(int c) {
+        int idx = search(c);
+        if (idx < 0) {
+            return null;
+        }
+        Edge previous = values[idx];
+        int currsize = codePoints.length - 1;
+        int[] copy = new int[currsize];
+        System.arraycopy(codePoints, 0, copy, 0, idx);
+        System.arraycopy(codePoints, idx + 1, copy, idx, currsize - idx);
+        codePoints = copy;
+        Edge[] copy1 = new Edge[currsize];
+        System.arraycopy(values, 0, copy1, 0, idx);
+        System.arraycopy(values, idx + 1, copy1, idx, currsize - idx);
+        values = copy1;
+        return previous;
     }
     
     @Override
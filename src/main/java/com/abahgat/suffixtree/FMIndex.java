@@ -0,0 +1,452 @@
+/**
+ * Copyright 2012 Alessandro Bahgat Shehata
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.abahgat.suffixtree;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.function.IntConsumer;
+
+/**
+ * A read-only, compressed full-text index over a set of keys, answering the same
+ * queries as a {@link GeneralizedSuffixTree} (see Ferragina and Manzini, "Opportunistic
+ * data structures with applications").
+ *
+ * Keys are concatenated in a single text, each of them followed by a separator. Rather
+ * than the text or its suffix array, the index stores:
+ * <ul>
+ *     <li>the Burrows-Wheeler transform (BWT) of the text, i.e. the char preceding each
+ *     suffix, in the lexicographic order of the suffixes, in a Huffman-shaped
+ *     {@link WaveletTree} taking at most n(H0 + 1) bits, where H0 is the zero-order
+ *     entropy of the chars of the text</li>
+ *     <li>for each char, the number of chars in the text that are smaller than it</li>
+ *     <li>the key of one suffix out of {@link #SAMPLE_RATE} in each key, and of the
+ *     suffix starting each key</li>
+ *     <li>the index of each key</li>
+ *     <li>the number of repeated indexes below each node of the suffix tree of the
+ *     text, in at most 2 bits per char (see Sadakane, "Succinct data structures for
+ *     flexible text retrieval systems")</li>
+ * </ul>
+ * The BWT is compressed to the zero-order entropy of the text, not to its higher order
+ * entropy: the space is not proportional to the size of the text compressed by a
+ * context-aware compressor, but only to the number of bits a Huffman code needs for its
+ * chars. Along with the other arrays, this is about a byte for each char of keys written
+ * in natural language, about 9 bytes for each key and 4 more bytes every
+ * {@link #SAMPLE_RATE} chars, instead of about 10 bytes for each char taken by a
+ * {@link SuffixArrayIndex}.
+ *
+ * The suffixes starting with a word are found by backward search, in O(m H0): the range
+ * of suffixes starting with the last i chars of the word is narrowed down to the ones
+ * preceded by the char before them, counting the occurrences of that char in the BWT.
+ * The number of distinct indexes in the range is then the size of the range minus the
+ * number of repeated indexes within it, found in O(log n) time without visiting the
+ * suffixes. The key of each suffix returned is found by walking back through the text
+ * until a sampled suffix is reached, in at most {@link #SAMPLE_RATE} steps: searches
+ * take time linear in the number of results they return, which makes this index best
+ * suited for large sets of keys searched with selective words, or with limits.
+ */
+public class FMIndex implements SuffixIndex {
+    /**
+     * The maximum distance, in chars, between two suffixes whose key is stored
+     */
+    static final int SAMPLE_RATE = 16;
+    /**
+     * The (shared) result of searches that do not match any key
+     */
+    private static final int[] NO_RESULTS = new int[0];
+
+    /**
+     * The distinct chars in the keys, in ascending order.
+     * The char in position c is encoded as c + 1, and the separator as 0.
+     */
+    private final char[] symbols;
+    /**
+     * The encoded BWT of the text
+     */
+    private final WaveletTree bwt;
+    /**
+     * For each encoded char c, the number of encoded chars smaller than c in the text
+     */
+    private final int[] smaller;
+    /**
+     * Marks the positions in the BWT of the suffixes whose key is stored
+     */
+    private final RankBitVector sampled;
+    /**
+     * The key of each sampled suffix, in the order of the BWT
+     */
+    private final int[] sampledKeys;
+    /**
+     * The index of each key
+     */
+    private final int[] indexes;
+    /**
+     * The number of repeated indexes charged to each position of the BWT, in unary: as
+     * many 1 bits as the count of the position, followed by a 0 bit.
+     *
+     * Each suffix whose index also belongs to an earlier suffix is charged to the position
+     * of the smallest longest common prefix between the two, i.e. to the lowest common
+     * ancestor of their leaves in the suffix tree, so that the repeats within the range of
+     * a word are the ones charged to the positions strictly inside it.
+     */
+    private final RankBitVector repeats;
+    /**
+     * The number of distinct indexes
+     */
+    private final int indexCount;
+
+    private FMIndex(char[] symbols, WaveletTree bwt, int[] smaller, RankBitVector sampled, int[] sampledKeys,
+            int[] indexes, RankBitVector repeats, int indexCount) {
+        this.symbols = symbols;
+        this.bwt = bwt;
+        this.smaller = smaller;
+        this.sampled = sampled;
+        this.sampledKeys = sampledKeys;
+        this.indexes = indexes;
+        this.repeats = repeats;
+        this.indexCount = indexCount;
+    }
+
+    /**
+     * Builds an index where each key is stored with its position in <tt>keys</tt> as index.
+     *
+     * @param keys the keys to index
+     * @return the index
+     */
+    public static FMIndex build(List<String> keys) {
+        var indexes = new int[keys.size()];
+        Arrays.setAll(indexes, i -> i);
+        return build(keys, indexes);
+    }
+
+    /**
+     * Builds an index where each key is stored with the index in the same position of
+     * <tt>indexes</tt>, as if <tt>put(keys.get(i), indexes[i])</tt> was called on a
+     * {@link GeneralizedSuffixTree} for each of them.
+     *
+     * @param keys the keys to index
+     * @param indexes the index of each key, in any order and possibly repeated
+     * @return the index
+     */
+    public static FMIndex build(List<String> keys, int[] indexes) {
+        if (keys.size() != indexes.length) {
+            throw new IllegalArgumentException("Got " + keys.size() + " keys but " + indexes.length + " indexes");
+        }
+        int k = keys.size();
+        var seen = new boolean[Character.MAX_VALUE + 1];
+        int length = k;
+        for (String key : keys) {
+            for (int i = 0; i < key.length(); i++) {
+                seen[key.charAt(i)] = true;
+            }
+            length += key.length();
+        }
+        var codes = new int[Character.MAX_VALUE + 1];
+        int sigma = 0;
+        for (int c = 0; c <= Character.MAX_VALUE; c++) {
+            if (seen[c]) {
+                codes[c] = ++sigma;
+            }
+        }
+        var symbols = new char[sigma];
+        for (int c = 0; c <= Character.MAX_VALUE; c++) {
+            if (seen[c]) {
+                symbols[codes[c] - 1] = (char) c;
+            }
+        }
+
+        // each key is followed by a separator (0), smaller than any char, so that
+        // suffixes compare as if they ended with their keys
+        var s = new int[length];
+        var keyOf = new int[length];
+        var sampledPosition = new boolean[length];
+        for (int i = 0, p = 0; i < k; i++) {
+            String key = keys.get(i);
+            for (int j = 0; j < key.length(); j++, p++) {
+                s[p] = codes[key.charAt(j)];
+                keyOf[p] = i;
+                sampledPosition[p] = j % SAMPLE_RATE == 0;
+            }
+            keyOf[p++] = i;
+        }
+        int[] sa = SuffixArrays.sais(s, sigma);
+
+        var bwt = new int[length];
+        var sampled = new RankBitVector(length);
+        int samples = 0;
+        for (int r = 0; r < length; r++) {
+            bwt[r] = s[sa[r] == 0 ? length - 1 : sa[r] - 1];
+            if (sampledPosition[sa[r]]) {
+                sampled.set(r);
+                samples++;
+            }
+        }
+        sampled.seal();
+        var sampledKeys = new int[samples];
+        for (int r = 0, i = 0; r < length; r++) {
+            if (sampledPosition[sa[r]]) {
+                sampledKeys[i++] = keyOf[sa[r]];
+            }
+        }
+
+        var smaller = new int[sigma + 2];
+        for (int c : s) {
+            smaller[c + 1]++;
+        }
+        for (int c = 1; c < smaller.length; c++) {
+            smaller[c] += smaller[c - 1];
+        }
+
+        // as in a suffix tree, empty keys are not stored
+        var distinct = new IntSet();
+        for (int i = 0; i < k; i++) {
+            if (!keys.get(i).isEmpty()) {
+                distinct.add(indexes[i]);
+            }
+        }
+        return new FMIndex(symbols, new WaveletTree(bwt, sigma), smaller, sampled, sampledKeys, indexes.clone(),
+                repeats(s, sa, keyOf, indexes), distinct.size());
+    }
+
+    /**
+     * Computes the repeats of the given text, whose suffix array is <tt>sa</tt>.
+     *
+     * The suffixes are visited in order, remembering the last position of each index.
+     * When an index appears again, the repeat is charged to the leftmost position with the
+     * smallest LCP since its last position, found on a stack of the positions whose LCP is
+     * not larger than the one of any following position.
+     */
+    private static RankBitVector repeats(int[] s, int[] sa, int[] keyOf, int[] indexes) {
+        int n = sa.length;
+        int[] lcp = lcp(s, sa);
+        var ordinals = new IntSet();
+        for (int index : indexes) {
+            ordinals.add(index);
+        }
+        var last = new int[ordinals.size()];
+        Arrays.fill(last, -1);
+        var counts = new int[n];
+        var stack = new int[n];
+        int top = 0;
+        int total = 0;
+        for (int r = 0; r < n; r++) {
+            while (top > 0 && lcp[stack[top - 1]] > lcp[r]) {
+                top--;
+            }
+            stack[top++] = r;
+            int ordinal = ordinals.indexOf(indexes[keyOf[sa[r]]]);
+            int previous = last[ordinal];
+            last[ordinal] = r;
+            if (previous >= 0) {
+                // the first position on the stack after the previous one
+                int lo = 0;
+                int hi = top - 1;
+                while (lo < hi) {
+                    int mid = (lo + hi) >>> 1;
+                    if (stack[mid] > previous) {
+                        hi = mid;
+                    } else {
+                        lo = mid + 1;
+                    }
+                }
+                counts[stack[lo]]++;
+                total++;
+            }
+        }
+        var repeats = new RankBitVector(n + total);
+        for (int r = 0, bit = 0; r < n; r++, bit++) {
+            for (int c = 0; c < counts[r]; c++) {
+                repeats.set(bit++);
+            }
+        }
+        repeats.seal();
+        return repeats;
+    }
+
+    /**
+     * Computes the LCP array of the given text (Kasai et al.): lcp[r] is the length of the
+     * longest common prefix of the suffixes in positions r - 1 and r of <tt>sa</tt>,
+     * not going past the end of their keys.
+     */
+    private static int[] lcp(int[] s, int[] sa) {
+        int n = sa.length;
+        var rank = new int[n];
+        for (int r = 0; r < n; r++) {
+            rank[sa[r]] = r;
+        }
+        var lcp = new int[n];
+        int h = 0;
+        for (int i = 0; i < n; i++) {
+            if (rank[i] == 0) {
+                h = 0;
+                continue;
+            }
+            int j = sa[rank[i] - 1];
+            while (i + h < n && j + h < n && s[i + h] == s[j + h] && s[i + h] != 0) {
+                h++;
+            }
+            lcp[rank[i]] = h;
+            if (h > 0) {
+                h--;
+            }
+        }
+        return lcp;
+    }
+
+    /**
+     * @see GeneralizedSuffixTree#search(String)
+     */
+    public Collection<Integer> search(String word) {
+        return search(word, -1);
+    }
+
+    /**
+     * @see GeneralizedSuffixTree#search(String, int)
+     */
+    public Collection<Integer> search(String word, int results) {
+        Range range = backwardSearch(word);
+        if (range == null) {
+            return IntSet.modifiableSet(NO_RESULTS);
+        }
+        return collect(range, results).toModifiableSet();
+    }
+
+    /**
+     * @see GeneralizedSuffixTree#searchInts(String)
+     */
+    public int[] searchInts(String word) {
+        return searchInts(word, -1);
+    }
+
+    /**
+     * @see GeneralizedSuffixTree#searchInts(String, int)
+     */
+    public int[] searchInts(String word, int results) {
+        Range range = backwardSearch(word);
+        if (range == null) {
+            return NO_RESULTS;
+        }
+        return collect(range, results).toIntArray();
+    }
+
+    /**
+     * @see GeneralizedSuffixTree#search(String, IntConsumer)
+     */
+    public void search(String word, IntConsumer action) {
+        search(word, -1, action);
+    }
+
+    /**
+     * @see GeneralizedSuffixTree#search(String, int, IntConsumer)
+     */
+    public void search(String word, int results, IntConsumer action) {
+        for (int index : searchInts(word, results)) {
+            action.accept(index);
+        }
+    }
+
+    /**
+     * Searches for the given word and returns at most the given number of matches,
+     * along with the total number of matches.
+     *
+     * The total is counted from the range of the suffixes starting with the word, and
+     * only the keys of the matches returned are looked up.
+     *
+     * @see GeneralizedSuffixTree#searchWithCount(String, int)
+     */
+    public GeneralizedSuffixTree.ResultInfo searchWithCount(String word, int to) {
+        Range range = backwardSearch(word);
+        if (range == null) {
+            return new GeneralizedSuffixTree.ResultInfo(IntSet.modifiableSet(NO_RESULTS), 0);
+        }
+        return new GeneralizedSuffixTree.ResultInfo(collect(range, to).toModifiableSet(), count(range));
+    }
+
+    /**
+     * Returns the number of distinct indexes stored in the index
+     */
+    public int computeCount() {
+        return indexCount;
+    }
+
+    /**
+     * The positions in the BWT of the suffixes starting with a word, from <tt>first</tt>
+     * (inclusive) to <tt>end</tt> (exclusive)
+     */
+    private record Range(int first, int end) {
+    }
+
+    /**
+     * Returns the range of the suffixes starting with <tt>word</tt>, or null if there are none
+     */
+    private Range backwardSearch(String word) {
+        if (word.isEmpty()) {
+            return null;
+        }
+        int first = 0;
+        int end = bwt.size();
+        for (int i = word.length() - 1; i >= 0 && first < end; i--) {
+            int c = Arrays.binarySearch(symbols, word.charAt(i)) + 1;
+            if (c <= 0) {
+                return null;
+            }
+            first = smaller[c] + bwt.rank(c, first);
+            end = smaller[c] + bwt.rank(c, end);
+        }
+        return first < end ? new Range(first, end) : null;
+    }
+
+    /**
+     * Returns the number of distinct indexes of the suffixes in the given range: the
+     * repeats charged to the positions from <tt>first + 1</tt> to <tt>end - 1</tt> are
+     * the ones whose index appears earlier within the range.
+     */
+    private int count(Range range) {
+        return range.end() - range.first() - (repeatsUpTo(range.end() - 1) - repeatsUpTo(range.first()));
+    }
+
+    /**
+     * Returns the number of repeats charged to the positions from 0 to <tt>r</tt>, i.e.
+     * the number of 1 bits before the 0 bit ending the count of <tt>r</tt>
+     */
+    private int repeatsUpTo(int r) {
+        return repeats.select0(r) - r;
+    }
+
+    /**
+     * Collects the indexes of the keys of the suffixes in the given range
+     */
+    private IntSet collect(Range range, int results) {
+        var found = new IntSet();
+        for (int r = range.first(); r < range.end() && found.size() != results; r++) {
+            found.add(indexes[keyOf(r)]);
+        }
+        return found;
+    }
+
+    /**
+     * Returns the key of the suffix in the given position of the BWT, moving to the suffix
+     * starting one char before it (LF mapping) until a sampled one is found.
+     * Since the first suffix of each key is sampled, this never crosses a separator.
+     */
+    private int keyOf(int r) {
+        while (!sampled.get(r)) {
+            int c = bwt.get(r);
+            r = smaller[c] + bwt.rank(c, r);
+        }
+        return sampledKeys[sampled.rank1(r)];
+    }
+}
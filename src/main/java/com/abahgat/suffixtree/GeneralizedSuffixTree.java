@@ -15,8 +15,32 @@
  */
 package com.abahgat.suffixtree;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.Collection;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.PrimitiveIterator;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
+import java.util.stream.StreamSupport;
 
 /**
  * A Generalized Suffix Tree, based on the Ukkonen's paper "On-line construction of suffix trees"
@@ -52,20 +76,111 @@ import java.util.Collections;
  * This kind of "implicit path" is important in the testAndSplit method.
  *  
  */
-public class GeneralizedSuffixTree {
+public class GeneralizedSuffixTree implements SuffixIndex {
 
     /**
-     * The index of the last item that was added to the GST
+     * The (shared) result of searches that do not match any key
      */
-    private int last = 0;
+    private static final int[] NO_RESULTS = new int[0];
+
+    /**
+     * The largest index that was added to the GST
+     */
+    private int last;
+    /**
+     * The nodes whose subtree is known to contain {@link #countedIndex}, when it is
+     * smaller than some index already in the GST, null otherwise.
+     *
+     * The set is kept up to date while the index is added, and kept after that, so that
+     * consecutive puts of the same index out of order, as the keys of a document, only
+     * find the nodes containing it once.
+     * @see Node#addRef(int, float, Set)
+     */
+    private Set<Node> counted;
+    /**
+     * The index whose nodes are in {@link #counted}
+     */
+    private int countedIndex;
     /**
      * The root of the suffix tree
      */
-    private final Node root = new Node();
+    private final Node root;
     /**
      * The last leaf that was added during the update operation
      */
-    private Node activeLeaf = root;
+    private Node activeLeaf;
+    /**
+     * The node of the active point, while a key is being added
+     */
+    private Node activeNode;
+    /**
+     * The start, within the key being added, of the string the active point refers to
+     */
+    private int activeStart;
+    /**
+     * The start of the remainder left by the last call to canonize
+     */
+    private int canonizedStart;
+    /**
+     * The node found by the last call to testAndSplit
+     */
+    private Node splitNode;
+    /**
+     * The cache of search results, null if caching is disabled
+     */
+    private QueryCache cache;
+    /**
+     * The weight of the index being added
+     */
+    private float activeWeight;
+    /**
+     * The keys each index was added with, to find the offsets of occurrences, and the
+     * weight of each index
+     */
+    private final KeyTable keyTable = new KeyTable();
+
+    /**
+     * Creates an empty GST
+     */
+    public GeneralizedSuffixTree() {
+        this(new Node(), 0);
+    }
+
+    /**
+     * Creates a GST with the given root, as when restoring a snapshot
+     *
+     * @param root the root of the tree
+     * @param last the largest index that was added to the tree
+     */
+    GeneralizedSuffixTree(Node root, int last) {
+        this.root = root;
+        this.last = last;
+        this.activeLeaf = root;
+    }
+
+    /**
+     * Builds a GST over the given keys, in parallel on the common {@link ForkJoinPool}.
+     *
+     * @see GeneralizedSuffixTree#bulkLoad(List, ForkJoinPool)
+     */
+    public static GeneralizedSuffixTree bulkLoad(List<String> keys) {
+        return bulkLoad(keys, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Builds a GST over the given keys, in parallel on the given pool.
+     *
+     * The result is the same as calling <tt>put(keys.get(i), i)</tt> for each key, in
+     * order, on an empty GST: trees are built in parallel over partitions of the keys
+     * and then merged together. The returned GST can keep receiving keys with put.
+     *
+     * @param keys the keys to add, accessed by position from several threads
+     * @param pool the pool running the construction
+     * @return a GST where each key is stored with its position in <tt>keys</tt> as index
+     */
+    public static GeneralizedSuffixTree bulkLoad(List<String> keys, ForkJoinPool pool) {
+        return BulkLoader.load(keys, pool);
+    }
 
     /**
      * Searches for the given word within the GST.
@@ -73,6 +188,10 @@ public class GeneralizedSuffixTree {
      * Returns all the indexes for which the key contains the <tt>word</tt> that was
      * supplied as input.
      *
+     * The result is a modifiable set owned by the caller, as are the collections returned
+     * by the other searches: indexes are copied into it, boxed, in the order they were
+     * found. {@link #searchInts(String)} returns them without copying or boxing.
+     *
      * @param word the key to search for
      * @return the collection of indexes associated with the input <tt>word</tt>
      */
@@ -88,11 +207,671 @@ public class GeneralizedSuffixTree {
      * @return at most <tt>results</tt> values for the given word
      */
     public Collection<Integer> search(String word, int results) {
+        if (cache != null) {
+            return IntSet.modifiableSet(cachedSearch(word, results));
+        }
         Node tmpNode = searchNode(word);
         if (tmpNode == null) {
-            return Collections.emptyList();
+            return IntSet.modifiableSet(NO_RESULTS);
+        }
+        return tmpNode.getData(results).toModifiableSet();
+    }
+
+    /**
+     * Searches for the given word within the GST.
+     *
+     * Unlike {@link #search(String)}, indexes are returned as native ints, so that no
+     * boxing is needed for the results.
+     *
+     * @param word the key to search for
+     * @return the indexes associated with the input <tt>word</tt>
+     */
+    public int[] searchInts(String word) {
+        return searchInts(word, -1);
+    }
+
+    /**
+     * Searches for the given word within the GST and returns at most the given number of
+     * matches, as native ints.
+     *
+     * @param word the key to search for
+     * @param results the max number of results to return
+     * @return at most <tt>results</tt> indexes for the given word
+     */
+    public int[] searchInts(String word, int results) {
+        if (cache != null) {
+            return cachedSearch(word, results).clone();
+        }
+        Node tmpNode = searchNode(word);
+        if (tmpNode == null) {
+            return NO_RESULTS;
+        }
+        return tmpNode.getData(results).toIntArray();
+    }
+
+    /**
+     * Searches for the keys starting with the given word.
+     *
+     * @param word the prefix to search for
+     * @return the collection of indexes associated with keys starting with <tt>word</tt>
+     * @see GeneralizedSuffixTree#searchPrefix(String, int)
+     */
+    public Collection<Integer> searchPrefix(String word) {
+        return searchPrefix(word, -1);
+    }
+
+    /**
+     * Searches for the keys starting with the given word and returns at most the given
+     * number of matches.
+     *
+     * Nodes record the keys that are equal to the string their path denotes: the keys
+     * starting with <tt>word</tt> are the ones recorded in the subtree that
+     * {@link #search(String, int)} visits, which is visited in the same way.
+     *
+     * @param word the prefix to search for
+     * @param results the max number of results to return. Use -1 to get all
+     * @return at most <tt>results</tt> indexes associated with keys starting with <tt>word</tt>
+     */
+    public Collection<Integer> searchPrefix(String word, int results) {
+        Node tmpNode = searchNode(word);
+        if (tmpNode == null) {
+            return IntSet.modifiableSet(NO_RESULTS);
+        }
+        return new ResultCursor(tmpNode, results, true).drain().toModifiableSet();
+    }
+
+    /**
+     * Searches for the keys ending with the given word.
+     *
+     * @param word the suffix to search for
+     * @return the collection of indexes associated with keys ending with <tt>word</tt>
+     * @see GeneralizedSuffixTree#searchSuffix(String, int)
+     */
+    public Collection<Integer> searchSuffix(String word) {
+        return searchSuffix(word, -1);
+    }
+
+    /**
+     * Searches for the keys ending with the given word and returns at most the given
+     * number of matches.
+     *
+     * Each index is stored in the nodes where the suffixes of its keys end: the keys
+     * ending with <tt>word</tt> are the ones in the payload of the node denoting exactly
+     * <tt>word</tt>, if there is one, and no subtree has to be visited.
+     *
+     * @param word the suffix to search for
+     * @param results the max number of results to return. Use -1 to get all
+     * @return at most <tt>results</tt> indexes associated with keys ending with <tt>word</tt>
+     */
+    public Collection<Integer> searchSuffix(String word, int results) {
+        Node tmpNode = searchNode(word, true);
+        var found = new IntSet();
+        if (tmpNode == null) {
+            return found.toModifiableSet();
+        }
+        for (var it = tmpNode.payload(); it.hasNext() && found.size() != results; ) {
+            found.add(it.nextInt());
+        }
+        return found.toModifiableSet();
+    }
+
+    /**
+     * Searches for the given word and returns the matches with the largest weights.
+     *
+     * @param word the key to search for
+     * @return all the indexes associated with <tt>word</tt>, by decreasing weight
+     * @see GeneralizedSuffixTree#searchTopK(String, int)
+     */
+    public int[] searchTopK(String word) {
+        return searchTopK(word, -1);
+    }
+
+    /**
+     * Searches for the given word and returns the given number of matches with the
+     * largest weights, as native ints.
+     *
+     * Every node is annotated with an upper bound of the weights of the indexes in its
+     * subtree, so that the subtree of the node denoting <tt>word</tt> can be visited best
+     * first: nodes are expanded by decreasing bound, and an index is returned as soon as
+     * its weight is at least the bound of every node left to expand, since none of them
+     * can hold a heavier one. Only the nodes whose bound is larger than the weight of the
+     * last result returned are visited.
+     *
+     * Indexes with the same weight are returned in no particular order.
+     *
+     * @param word the key to search for
+     * @param results the max number of results to return. Use -1 to get all
+     * @return at most <tt>results</tt> indexes associated with <tt>word</tt>, by decreasing weight
+     * @see GeneralizedSuffixTree#put(String, int, float)
+     */
+    public int[] searchTopK(String word, int results) {
+        Node tmpNode = searchNode(word);
+        if (tmpNode == null || results == 0) {
+            return NO_RESULTS;
+        }
+        var found = new IntSet();
+        var frontier = new PriorityQueue<Node>(Comparator.comparingDouble(Node::getMaxWeight).reversed());
+        // the indexes in the payloads of the nodes expanded so far, by decreasing weight
+        var candidates = new PriorityQueue<Long>(Comparator.reverseOrder());
+        var reader = new PostingList.Reader();
+        frontier.add(tmpNode);
+        while (found.size() != results) {
+            if (!candidates.isEmpty()
+                    && (frontier.isEmpty() || weightOf(candidates.peek()) >= frontier.peek().getMaxWeight())) {
+                found.add((int) candidates.poll().longValue());
+                continue;
+            }
+            Node node = frontier.poll();
+            if (node == null) {
+                break;
+            }
+            node.readPayload(reader);
+            while (reader.hasNext()) {
+                int index = reader.nextInt();
+                if (!found.contains(index)) {
+                    candidates.add(candidate(getWeight(index), index));
+                }
+            }
+            for (int i = 0; i < node.edgeCount(); i++) {
+                frontier.add(node.edgeAt(i).getDest());
+            }
+        }
+        return found.toIntArray();
+    }
+
+    /**
+     * Packs an index and its weight in a long, ordered as the weights are: the weight,
+     * turned into an int with the same order as floats, takes the upper half.
+     */
+    static long candidate(float weight, int index) {
+        int bits = Float.floatToIntBits(weight);
+        bits ^= (bits >> 31) & 0x7fffffff;
+        return ((long) bits << 32) | (index & 0xffffffffL);
+    }
+
+    /**
+     * Returns the weight packed in a candidate
+     * @see #candidate(float, int)
+     */
+    private static float weightOf(long candidate) {
+        int bits = (int) (candidate >> 32);
+        bits ^= (bits >> 31) & 0x7fffffff;
+        return Float.intBitsToFloat(bits);
+    }
+
+    /**
+     * Returns the weight of the given index, 0 if it was never given one
+     *
+     * @see GeneralizedSuffixTree#put(String, int, float)
+     */
+    public float getWeight(int index) {
+        return keyTable.weightOf(index);
+    }
+
+    /**
+     * Searches for the given word and returns where it occurs in the keys.
+     *
+     * @param word the key to search for
+     * @return every occurrence of <tt>word</tt> within the keys
+     * @see GeneralizedSuffixTree#searchOccurrences(String, int)
+     */
+    public Occurrences searchOccurrences(String word) {
+        return searchOccurrences(word, -1);
+    }
+
+    /**
+     * Searches for the given word and returns at most the given number of occurrences,
+     * each made of an index, the key it occurs in and the offset where the word starts
+     * within the key.
+     *
+     * Every suffix of a key ends in a node of the subtree of <tt>word</tt>, whose payload
+     * holds the index of the key: the offset where the suffix starts is the length of the
+     * key minus the length of the string denoted by the node, which is tracked while
+     * visiting the subtree. The nodes also record the ids of the keys of indexes added
+     * with several keys whose suffixes end in them, so that each occurrence is found once,
+     * in its own key, and keys are never scanned.
+     *
+     * @param word the key to search for
+     * @param results the max number of occurrences to return. Use -1 to get all
+     * @return at most <tt>results</tt> occurrences of <tt>word</tt> within the keys
+     */
+    public Occurrences searchOccurrences(String word, int results) {
+        var found = new Occurrences();
+        if (word.isEmpty() || results == 0) {
+            return found;
+        }
+        Node node = root;
+        int depth = 0;
+        while (depth < word.length()) {
+            Edge e = node.getEdge(word.codePointAt(depth));
+            if (e == null || !e.regionMatches(0, word, depth, Math.min(word.length() - depth, e.length()))) {
+                return found;
+            }
+            depth += e.length();
+            node = e.getDest();
         }
-        return tmpNode.getData(results);
+
+        var nodes = new Node[16];
+        var depths = new int[16];
+        var reader = new PostingList.Reader();
+        nodes[0] = node;
+        depths[0] = depth;
+        int size = 1;
+        while (size > 0) {
+            size--;
+            node = nodes[size];
+            depth = depths[size];
+            node.readPayload(reader);
+            while (reader.hasNext() && found.size() != results) {
+                int index = reader.nextInt();
+                int position = keyTable.positionOf(index);
+                // the suffixes of indexes with several keys are told apart by key id below
+                if (keyTable.keyCountAt(position) == 1) {
+                    String key = keyTable.keyAt(position, 0);
+                    found.add(index, key, key.length() - depth);
+                }
+            }
+            node.readOwners(reader);
+            while (reader.hasNext() && found.size() != results) {
+                int id = reader.nextInt();
+                int index = keyTable.indexOfKeyId(id);
+                String key = keyTable.keyAt(keyTable.positionOf(index), keyTable.ordinalOfKeyId(id));
+                found.add(index, key, key.length() - depth);
+            }
+            if (found.size() == results) {
+                return found;
+            }
+            for (int i = 0; i < node.edgeCount(); i++) {
+                if (size == nodes.length) {
+                    nodes = Arrays.copyOf(nodes, 2 * size);
+                    depths = Arrays.copyOf(depths, 2 * size);
+                }
+                Edge e = node.edgeAt(i);
+                nodes[size] = e.getDest();
+                depths[size] = depth + e.length();
+                size++;
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Searches for the keys containing a string within the given edit distance of
+     * <tt>word</tt>, and returns at most the given number of matches.
+     *
+     * Every substring of a key is a prefix of one of its suffixes, i.e. a path from the
+     * root: the tree is visited once, depth-first, along with a row of the Levenshtein
+     * matrix between <tt>word</tt> and the string denoted by the path, updated for each
+     * char of the edge labels. Wherever the whole of <tt>word</tt> gets closer than it
+     * was anywhere above on the path, the indexes below match within that distance,
+     * and the subtree is recorded with it. A path is abandoned as soon as no prefix of
+     * <tt>word</tt> is within <tt>maxEdits</tt>, or closer than the best distance already
+     * found on the path, as longer paths cannot get any closer.
+     *
+     * Each index is returned once, with the smallest distance it matches within: the
+     * recorded subtrees are collected by increasing distance, so that matches are
+     * returned from the closest to the farthest, and when the number of results is
+     * limited the closest ones are returned first.
+     *
+     * @param word the key to search for
+     * @param maxEdits the max number of insertions, deletions and substitutions of chars
+     * @param results the max number of results to return. Use -1 to get all
+     * @return at most <tt>results</tt> indexes associated with keys containing a string
+     * within <tt>maxEdits</tt> edits of <tt>word</tt>, by increasing edit distance
+     */
+    public Collection<Integer> searchApprox(String word, int maxEdits, int results) {
+        if (maxEdits < 0) {
+            throw new IllegalArgumentException("The number of edits must not be negative, got " + maxEdits);
+        }
+        int[] pattern = word.codePoints().toArray();
+        var found = new IntSet();
+        if (pattern.length == 0) {
+            return found.toModifiableSet();
+        }
+        for (List<Node> matches : matchApprox(pattern, maxEdits)) {
+            for (Node node : matches) {
+                if (collect(node, results, found)) {
+                    return found.toModifiableSet();
+                }
+            }
+        }
+        return found.toModifiableSet();
+    }
+
+    /**
+     * Returns the subtrees whose indexes match <tt>pattern</tt> within <tt>maxEdits</tt>
+     * edits, grouped by the distance they match within, found by a single visit of the
+     * tree.
+     * @see #searchApprox(String, int, int)
+     */
+    private List<List<Node>> matchApprox(int[] pattern, int maxEdits) {
+        int m = pattern.length;
+        List<List<Node>> matches = new ArrayList<>(maxEdits + 1);
+        for (int d = 0; d <= maxEdits; d++) {
+            matches.add(new ArrayList<>());
+        }
+        // row[j] is the edit distance between the first j code points of pattern and the
+        // path, and row[m + 1] the smallest distance of the whole pattern on the path
+        var first = new int[m + 2];
+        Arrays.setAll(first, j -> Math.min(j, m));
+        if (m <= maxEdits) {
+            matches.get(m).add(root);
+        }
+        var nodes = new ArrayDeque<Node>();
+        var rows = new ArrayDeque<int[]>();
+        nodes.push(root);
+        rows.push(first);
+        while (!nodes.isEmpty()) {
+            Node node = nodes.pop();
+            int[] parentRow = rows.pop();
+            for (int i = 0; i < node.edgeCount(); i++) {
+                Edge e = node.edgeAt(i);
+                int[] row = parentRow.clone();
+                int best = row[m + 1];
+                boolean viable = true;
+                for (int k = 0; k < e.length() && viable; ) {
+                    int c = e.codePointAt(k);
+                    k += Character.charCount(c);
+                    int diagonal = row[0];
+                    row[0]++;
+                    int min = row[0];
+                    for (int j = 1; j <= m; j++) {
+                        int above = row[j];
+                        row[j] = Math.min(Math.min(above, row[j - 1]) + 1, diagonal + (pattern[j - 1] == c ? 0 : 1));
+                        diagonal = above;
+                        min = Math.min(min, row[j]);
+                    }
+                    best = Math.min(best, row[m]);
+                    viable = min <= maxEdits && min < best;
+                }
+                if (best < row[m + 1] && best <= maxEdits) {
+                    matches.get(best).add(e.getDest());
+                }
+                if (viable) {
+                    row[m + 1] = best;
+                    nodes.push(e.getDest());
+                    rows.push(row);
+                }
+            }
+        }
+        return matches;
+    }
+
+    /**
+     * Adds the indexes in the subtree of <tt>node</tt> to <tt>found</tt>, until it holds
+     * <tt>results</tt> indexes.
+     *
+     * @return true if <tt>found</tt> is full
+     */
+    private boolean collect(Node node, int results, IntSet found) {
+        for (var it = new ResultCursor(node, -1); it.hasNext() && found.size() != results; ) {
+            found.add(it.nextInt());
+        }
+        return found.size() == results;
+    }
+
+    /**
+     * Searches for the keys matching the given pattern, made of literal chars and of
+     * wildcards matching a single char.
+     *
+     * @param pattern the pattern to search for
+     * @return the collection of indexes associated with keys containing a string matching <tt>pattern</tt>
+     * @see GeneralizedSuffixTree#searchPattern(String, int)
+     */
+    public Collection<Integer> searchPattern(String pattern) {
+        return searchPattern(pattern, -1);
+    }
+
+    /**
+     * Searches for the keys containing a string matching the given pattern, and returns
+     * at most the given number of matches.
+     *
+     * In the pattern, <tt>?</tt> matches any char, <tt>[...]</tt> any of the chars or
+     * ranges of chars in brackets (or any other char, as in <tt>[^...]</tt>), and
+     * <tt>\</tt> makes the following char literal.
+     *
+     * The tree is visited once for the whole pattern: runs of literal chars are matched
+     * against edge labels as in {@link #search(String)}, and the visit only branches over
+     * the edges leaving a node at the positions of wildcards, following just the ones
+     * the wildcard matches. Each matching index is returned once.
+     *
+     * @param pattern the pattern to search for
+     * @param results the max number of results to return. Use -1 to get all
+     * @return at most <tt>results</tt> indexes associated with keys containing a string
+     * matching <tt>pattern</tt>
+     * @throws IllegalArgumentException if the pattern has an unclosed class, an invalid
+     * range or a trailing escape
+     */
+    public Collection<Integer> searchPattern(String pattern, int results) {
+        WildcardPattern compiled = WildcardPattern.compile(pattern);
+        var found = new IntSet();
+        if (compiled.isEmpty()) {
+            return found.toModifiableSet();
+        }
+        for (Node node : compiled.matches(root)) {
+            if (collect(node, results, found)) {
+                break;
+            }
+        }
+        return found.toModifiableSet();
+    }
+
+    /**
+     * Returns the longest string that is a substring of the keys of at least
+     * <tt>minKeys</tt> distinct indexes.
+     *
+     * The strings shared by the most indexes are the ones denoted by nodes, whose result
+     * count is the number of distinct indexes containing them: the longest one is the
+     * deepest node whose count is at least <tt>minKeys</tt>. Since counts can only shrink
+     * going down the tree, the visit skips the subtrees of nodes below the threshold, and
+     * no set of indexes is built along the way.
+     *
+     * @param minKeys the number of distinct indexes that must share the substring
+     * @return the longest common substring, or an empty string if no char is shared by
+     * that many indexes
+     */
+    public String longestCommonSubstring(int minKeys) {
+        if (minKeys < 1) {
+            throw new IllegalArgumentException("The number of keys must be positive, got " + minKeys);
+        }
+        Edge best = null;
+        int bestDepth = 0;
+        var nodes = new Node[16];
+        var depths = new int[16];
+        nodes[0] = root;
+        int size = 1;
+        while (size > 0) {
+            size--;
+            Node node = nodes[size];
+            int depth = depths[size];
+            for (int i = 0; i < node.edgeCount(); i++) {
+                Edge e = node.edgeAt(i);
+                if (e.getDest().getResultCount() < minKeys) {
+                    continue;
+                }
+                int childDepth = depth + e.length();
+                if (childDepth > bestDepth) {
+                    best = e;
+                    bestDepth = childDepth;
+                }
+                if (size == nodes.length) {
+                    nodes = Arrays.copyOf(nodes, 2 * size);
+                    depths = Arrays.copyOf(depths, 2 * size);
+                }
+                nodes[size] = e.getDest();
+                depths[size] = childDepth;
+                size++;
+            }
+        }
+        if (best == null) {
+            return "";
+        }
+        // the path to the destination of an edge ends with its label, in the same key
+        return best.getSource().substring(best.getEnd() - bestDepth, best.getEnd());
+    }
+
+    /**
+     * Returns the keys each index was added with
+     */
+    KeyTable getKeyTable() {
+        return keyTable;
+    }
+
+    /**
+     * Searches for all the given words within the GST, returning at most the given number
+     * of matches for each of them, as native ints.
+     *
+     * Words are searched in lexicographic order, so that words sharing a prefix are
+     * searched one after the other: the path followed by each word is kept, and the
+     * next word resumes from the deepest node on it that is reached by their common
+     * prefix instead of starting from the root. Repeated words are searched once.
+     *
+     * @param words the keys to search for
+     * @param results the max number of results to return for each word. Use -1 to get all
+     * @return for each word, in the same order, at most <tt>results</tt> indexes for it
+     */
+    public int[][] searchAll(List<String> words, int results) {
+        var found = new int[words.size()][];
+        Integer[] order = new Integer[found.length];
+        Arrays.setAll(order, i -> i);
+        Arrays.sort(order, Comparator.comparing(words::get));
+
+        // the explicit nodes on the path of the previous word, each with the number of
+        // chars of the word consumed to reach it
+        var path = new Node[16];
+        var depths = new int[16];
+        path[0] = root;
+        int pathSize = 1;
+        String previous = null;
+        int[] previousFound = NO_RESULTS;
+        for (int q : order) {
+            String word = words.get(q);
+            if (word.equals(previous)) {
+                found[q] = previousFound.clone();
+                continue;
+            }
+            int common = previous == null ? 0 : commonPrefix(previous, word);
+            while (depths[pathSize - 1] > common) {
+                pathSize--;
+            }
+
+            Node node = path[pathSize - 1];
+            int i = depths[pathSize - 1];
+            Node match = i > 0 && i == word.length() ? node : null;
+            while (i < word.length()) {
+                Edge e = node.getEdge(word.codePointAt(i));
+                if (e == null) {
+                    break;
+                }
+                int lenToMatch = Math.min(word.length() - i, e.length());
+                if (!e.regionMatches(0, word, i, lenToMatch)) {
+                    break;
+                }
+                if (e.length() >= word.length() - i) {
+                    match = e.getDest();
+                    break;
+                }
+                node = e.getDest();
+                i += e.length();
+                if (pathSize == path.length) {
+                    path = Arrays.copyOf(path, 2 * pathSize);
+                    depths = Arrays.copyOf(depths, 2 * pathSize);
+                }
+                path[pathSize] = node;
+                depths[pathSize] = i;
+                pathSize++;
+            }
+            found[q] = match == null ? NO_RESULTS : match.getData(results).toIntArray();
+            previous = word;
+            previousFound = found[q];
+        }
+        return found;
+    }
+
+    /**
+     * Returns the length of the longest common prefix of the given strings
+     */
+    private static int commonPrefix(String a, String b) {
+        int length = Math.min(a.length(), b.length());
+        for (int i = 0; i < length; i++) {
+            if (a.charAt(i) != b.charAt(i)) {
+                return i;
+            }
+        }
+        return length;
+    }
+
+    /**
+     * Searches for the given word within the GST, passing each of the indexes found to
+     * <tt>action</tt>.
+     *
+     * @param word the key to search for
+     * @param action the callback receiving every index associated with <tt>word</tt>
+     */
+    public void search(String word, IntConsumer action) {
+        search(word, -1, action);
+    }
+
+    /**
+     * Searches for the given word within the GST, passing at most the given number of
+     * matches to <tt>action</tt>.
+     *
+     * Indexes are handed to <tt>action</tt> as soon as they are found, without
+     * allocating a collection to hold them.
+     *
+     * @param word the key to search for
+     * @param results the max number of results to return
+     * @param action the callback receiving the indexes associated with <tt>word</tt>
+     */
+    public void search(String word, int results, IntConsumer action) {
+        if (cache != null) {
+            for (int index : cachedSearch(word, results)) {
+                action.accept(index);
+            }
+            return;
+        }
+        Node tmpNode = searchNode(word);
+        if (tmpNode != null) {
+            new ResultCursor(tmpNode, results).forEachRemaining(action);
+        }
+    }
+
+    /**
+     * Searches for the given word within the GST, returning the indexes found as a stream.
+     *
+     * The stream is lazy: the tree is visited only as far as needed to produce the
+     * elements that are consumed, so short-circuiting operations such as
+     * <tt>limit</tt> or <tt>findFirst</tt> do not visit the whole subtree.
+     * The GST must not be modified while the stream is in use.
+     *
+     * @param word the key to search for
+     * @return a stream of the indexes associated with the input <tt>word</tt>
+     */
+    public IntStream searchStream(String word) {
+        return StreamSupport.intStream(
+                Spliterators.spliteratorUnknownSize(searchIterator(word, -1), Spliterator.DISTINCT | Spliterator.NONNULL),
+                false);
+    }
+
+    /**
+     * Searches for the given word within the GST, returning a lazy iterator over at most
+     * the given number of matches.
+     *
+     * The tree is visited depth-first, one node at a time, as results are requested:
+     * retrieving the first <tt>n</tt> results costs roughly O(n), regardless of how many
+     * keys contain <tt>word</tt>.
+     * The GST must not be modified while the iterator is in use.
+     *
+     * @param word the key to search for
+     * @param results the max number of results to return. Use -1 to get all
+     * @return an iterator over at most <tt>results</tt> indexes for the given word
+     */
+    public PrimitiveIterator.OfInt searchIterator(String word, int results) {
+        Node tmpNode = searchNode(word);
+        if (tmpNode == null) {
+            return Spliterators.iterator(Spliterators.emptyIntSpliterator());
+        }
+        return new ResultCursor(tmpNode, results);
     }
 
     /**
@@ -106,16 +885,74 @@ public class GeneralizedSuffixTree {
     public ResultInfo searchWithCount(String word, int to) {
         Node tmpNode = searchNode(word);
         if (tmpNode == null) {
-            return new ResultInfo(Collections.emptyList(), 0);
+            return new ResultInfo(IntSet.modifiableSet(NO_RESULTS), 0);
+        }
+        return new ResultInfo(tmpNode.getData(to).toModifiableSet(), tmpNode.getResultCount());
+    }
+
+    /**
+     * Returns the results of the given search from the cache, searching the GST and
+     * caching them if they are not there. The returned array must not be modified.
+     */
+    private int[] cachedSearch(String word, int results) {
+        int[] found = cache.get(word, results);
+        if (found == null) {
+            Node tmpNode = searchNode(word);
+            found = tmpNode == null ? NO_RESULTS : tmpNode.getData(results).toIntArray();
+            cache.put(word, results, found);
         }
+        return found;
+    }
 
-        return new ResultInfo(tmpNode.getData(to), tmpNode.getResultCount());
+    /**
+     * Enables caching the results of searches, replacing the current cache if there is one.
+     *
+     * Results are cached by word and max number of results, and served by search,
+     * searchInts and the IntConsumer overloads of search. Entries weigh one plus the
+     * number of indexes they hold, and the least recently used ones are evicted once
+     * their total weight exceeds <tt>maxWeight</tt>.
+     *
+     * The cache is kept consistent with the GST: put drops the results of the words
+     * contained in the key added, and remove drops the results holding the index removed.
+     * Both have to check every entry, so large caches are best suited to trees that are
+     * searched much more often than they are modified.
+     *
+     * @param maxWeight the max total weight of the cached results
+     */
+    public void enableCache(long maxWeight) {
+        cache = new QueryCache(maxWeight);
+    }
+
+    /**
+     * Disables caching the results of searches, dropping the cache.
+     */
+    public void disableCache() {
+        cache = null;
+    }
+
+    /**
+     * Returns the statistics of the cache of search results, all zero if caching is disabled.
+     *
+     * @see GeneralizedSuffixTree#enableCache(long)
+     */
+    public CacheStats cacheStats() {
+        return cache == null ? new CacheStats(0, 0, 0, 0, 0, 0) : cache.stats();
     }
 
     /**
      * Returns the tree node (if present) that corresponds to the given string.
      */
     private Node searchNode(String word) {
+        return searchNode(word, false);
+    }
+
+    /**
+     * Returns the tree node (if present) that corresponds to the given string.
+     *
+     * @param exact whether the path to the node must denote exactly <tt>word</tt>, rather
+     *              than a string starting with it
+     */
+    private Node searchNode(String word, boolean exact) {
         /*
          * Verifies if exists a path from the root to a node such that the concatenation
          * of all the labels on the path is a superstring of the given word.
@@ -139,16 +976,14 @@ public class GeneralizedSuffixTree {
                 }
 
                 if (currentEdge.length() >= word.length() - i) {
-                    return currentEdge.getDest();
+                    return !exact || currentEdge.length() == word.length() - i ? currentEdge.getDest() : null;
                 } else {
                     // advance to next node
                     currentNode = currentEdge.getDest();
+                    // lenToMatch already covers both chars of a supplementary code point
                     i += lenToMatch - 1;
                 }
             }
-            if (Character.isSupplementaryCodePoint(ch)) {
-                i++;
-            }
         }
 
         return null;
@@ -157,55 +992,257 @@ public class GeneralizedSuffixTree {
     /**
      * Adds the specified <tt>index</tt> to the GST under the given <tt>key</tt>.
      *
-     * Entries must be inserted so that their indexes are in non-decreasing order,
-     * otherwise an IllegalStateException will be raised.
+     * Entries can be inserted in any order, although inserting them so that their
+     * indexes are in non-decreasing order is the fastest: out of order indexes are
+     * inserted in the sorted payloads of the nodes, and to keep result counts exact the
+     * nodes already containing them are found first, by following the suffix links from
+     * the nodes of the keys they were added with.
+     *
+     * An index that was removed can be added again, with different keys and weight.
+     * An empty key adds nothing, as there is no word it could be found with.
+     *
+     * The active point of the construction is tracked as offsets into <tt>key</tt>,
+     * so that the only objects allocated are the nodes and edges added to the tree.
+     *
+     * @param key the string key that will be added to the index
+     * @param index the value that will be added to the index
+     */
+    public void put(String key, int index) {
+        insert(key, index, getWeight(index));
+    }
+
+    /**
+     * Adds the specified <tt>index</tt> to the GST under the given <tt>key</tt>, giving
+     * it the given weight, by which {@link #searchTopK(String, int)} ranks results.
+     *
+     * The weight belongs to the index rather than to the key: it is shared by all the
+     * keys the index is added with, which must all give the same weight, and cannot be
+     * changed unless the index is removed first. Indexes added without a weight weigh 0,
+     * and cannot be given a different one later on either.
+     *
+     * The key must not be empty: an empty key adds nothing to the tree, and so could
+     * not carry the weight of the index.
      *
      * @param key the string key that will be added to the index
      * @param index the value that will be added to the index
-     * @throws IllegalStateException if an invalid index is passed as input
+     * @param weight the weight of the index
+     * @throws IllegalArgumentException if key is empty, if weight is NaN, or if it
+     * differs from the weight already given to the index
      */
-    public void put(String key, int index) throws IllegalStateException {
+    public void put(String key, int index, float weight) {
+        if (key.isEmpty()) {
+            throw new IllegalArgumentException("Index " + index + " cannot be given a weight with an empty key");
+        }
+        if (Float.isNaN(weight)) {
+            throw new IllegalArgumentException("The weight of index " + index + " is not a number");
+        }
+        // checked before modifying the tree, as node bounds can only be raised
+        if (keyTable.contains(index) && getWeight(index) != weight) {
+            throw new IllegalArgumentException("Index " + index + " already has weight " + getWeight(index)
+                    + ", remove it before giving it weight " + weight);
+        }
+        insert(key, index, weight);
+    }
+
+    /**
+     * Adds the given index, with its weight, as described in {@link #put(String, int)}
+     */
+    private void insert(String key, int index, float weight) {
+        activeWeight = weight;
         if (index < last) {
-            throw new IllegalStateException("The input index must not be less than any of the previously inserted ones. Got " + index + ", expected at least " + last);
+            if (counted == null || countedIndex != index) {
+                counted = containing(index);
+                countedIndex = index;
+            }
         } else {
+            counted = null;
             last = index;
         }
 
         // reset activeLeaf
         activeLeaf = root;
 
-        Node s = root;
+        activeNode = root;
+        activeStart = 0;
 
         // proceed with tree construction (closely related to procedure in
         // Ukkonen's paper)
-        var text = "";
         // iterate over the string, one char at a time
-        for (int i = 0; i < key.length(); i++) {
+        for (int i = 0; i < key.length(); ) {
             // line 6
             int codePoint = key.codePointAt(i);
-            text += new String(Character.toChars(codePoint));
+            int end = i + Character.charCount(codePoint);
             // line 7: update the tree with the new transitions due to this new char
-            var active = update(s, text, key, i, index);
+            update(key, i, end, codePoint, index);
             // line 8: make sure the active pair is canonical
-            active = canonize(active.first(), active.second());
-            
-            s = active.first();
-            text = active.second();
-            
-            if (Character.isSupplementaryCodePoint(codePoint)) {
-                i++;
+            activeNode = canonize(activeNode, key, activeStart, end);
+            activeStart = canonizedStart;
+
+            i = end;
+        }
+
+        finish(key, index);
+
+        // every suffix of the key, including the key itself, ends in a node, which
+        // tells whether the index was already added with the same key
+        if (!key.isEmpty() && searchNode(key, true).addKey(index)) {
+            keyTable.add(index, key, weight);
+            int position = keyTable.positionOf(index);
+            int keyCount = keyTable.keyCountAt(position);
+            if (keyCount == 2) {
+                // the first key was given an id along with the second one
+                markKeyId(position, 0, true);
+            }
+            if (keyCount >= 2) {
+                markKeyId(position, keyCount - 1, true);
             }
         }
 
-        // add leaf suffix link, is necessary
-        if (null == activeLeaf.getSuffix() && activeLeaf != root && activeLeaf != s) {
-            activeLeaf.setSuffix(s);
+        if (cache != null) {
+            cache.invalidateKey(key);
+        }
+
+    }
+
+    /**
+     * Returns the nodes whose subtree contains the given index, before it is added out of
+     * order: the nodes where the suffixes of its keys end, found by following suffix links
+     * from the node of each key, and their ancestors.
+     */
+    private Set<Node> containing(int index) {
+        Set<Node> nodes = Collections.newSetFromMap(new IdentityHashMap<>());
+        int position = keyTable.positionOf(index);
+        for (int j = 0; position >= 0 && j < keyTable.keyCountAt(position); j++) {
+            for (Node n = searchNode(keyTable.keyAt(position, j), true); n != null && n != root; n = n.getSuffix()) {
+                for (Node a = n; a != null && nodes.add(a); a = a.getParent()) {
+                    // mark the path up to the first node already marked
+                }
+            }
         }
+        return nodes;
+    }
+
+    /**
+     * Records the id of a key, of an index with several keys, in the nodes where the
+     * suffixes of the key end, or removes it from them. The nodes are found by following
+     * the suffix links from the node of the key.
+     *
+     * @param position the position of the index in the key table
+     * @param ordinal the ordinal of the key among the keys of the index
+     * @param add whether to record the id or to remove it
+     * @see Node#addOwner(int)
+     */
+    private void markKeyId(int position, int ordinal, boolean add) {
+        int id = keyTable.keyIdAt(position, ordinal);
+        for (Node n = searchNode(keyTable.keyAt(position, ordinal), true); n != null && n != root; n = n.getSuffix()) {
+            if (add) {
+                n.addOwner(id);
+            } else {
+                n.removeOwner(id);
+            }
+        }
+    }
+
+    /**
+     * Records the ids of all the keys of indexes with several keys in the nodes, as after
+     * restoring the key table from a snapshot
+     */
+    void markKeyIds() {
+        for (int position = 0; position < keyTable.size(); position++) {
+            int keyCount = keyTable.keyCountAt(position);
+            for (int j = 0; keyCount > 1 && j < keyCount; j++) {
+                markKeyId(position, j, true);
+            }
+        }
+    }
+
+    /**
+     * Removes the given <tt>index</tt> from the GST, under all the keys it was added with.
+     *
+     * The index is removed right away from the nodes holding it, which are the nodes of
+     * the suffixes of its keys, found by following the suffix links from the node of each
+     * key, and the result counts of their ancestors are updated. The nodes and edges left
+     * empty are reclaimed, so that the cost of a removal depends on the keys of the index
+     * rather than on the size of the tree. Removing an index that is not in the GST does
+     * nothing.
+     *
+     * @param index the index to remove
+     * @see IndexRemoval
+     */
+    public void remove(int index) {
+        String[] keys = keyTable.keysOf(index);
+        if (keys.length == 0) {
+            return;
+        }
+        var nodes = new ArrayList<Node>(keys.length);
+        for (String key : keys) {
+            nodes.add(searchNode(key, true));
+        }
+        if (keys.length > 1) {
+            int position = keyTable.positionOf(index);
+            for (int j = 0; j < keys.length; j++) {
+                markKeyId(position, j, false);
+            }
+        }
+        keyTable.remove(index);
+        IndexRemoval.remove(root, nodes, index);
+        // the removed nodes may be among the counted ones
+        counted = null;
+        if (cache != null) {
+            cache.invalidateIndex(index);
+        }
+    }
+
+    /**
+     * Makes every suffix of <tt>key</tt> end in a node holding <tt>index</tt>, after all of
+     * its chars have been added.
+     *
+     * The suffixes that are longer than the active point end in the leaves added for them.
+     * The others already occurred in the tree, so the construction left them implicit:
+     * starting from the active point, each of them is made explicit, splitting the edge
+     * it ends in if needed, and the index is added to its node. The suffix link of each
+     * node visited, as well as the one of the last leaf, points to the node of the
+     * following suffix.
+     */
+    private void finish(String key, int index) {
+        int end = key.length();
+        Node s = activeNode;
+        int start = activeStart;
+        Node previous = activeLeaf == root ? null : activeLeaf;
+        while (true) {
+            s = canonize(s, key, start, end);
+            start = canonizedStart;
+            Node node = s;
+            if (start < end) {
+                // the suffix ends in the middle of an edge: split it
+                Edge g = s.getEdge(key.codePointAt(start));
+                node = new Node();
+                Edge newEdge = new Edge(key, start, end, node);
+                g.setLabel(g.getSource(), g.getStart() + end - start, g.getEnd());
+                linkAbove(node, g);
+                s.addEdge(key.codePointAt(start), newEdge);
+            }
+            if (previous != null && previous.getSuffix() == null && previous != node) {
+                previous.setSuffix(node);
+            }
+            if (node == root) {
+                return;
+            }
+            node.addRef(index, activeWeight, counted);
+            previous = node;
 
+            // move to the following suffix
+            if (s == root) {
+                start += Character.charCount(key.codePointAt(start));
+            } else {
+                s = s.getSuffix();
+            }
+        }
     }
 
     /**
-     * Tests whether the string stringPart + t is contained in the subtree that has inputs as root.
+     * Tests whether the string stringPart + t is contained in the subtree that has inputs as root,
+     * where stringPart is <tt>key[start, index)</tt> and t is the character at <tt>index</tt>.
      * If that's not the case, and there exists a path of edges e1, e2, ... such that
      *     e1.label + e2.label + ... + $end = stringPart
      * and there is an edge g such that
@@ -214,84 +1251,89 @@ public class GeneralizedSuffixTree {
      * Then g will be split in two different edges, one having $end as label, and the other one
      * having rest as label.
      *
+     * The last node that can be reached by following the path denoted by stringPart starting
+     * from inputs is stored in {@link #splitNode}.
+     *
      * @param inputs the starting node
-     * @param stringPart the string to search
+     * @param key the complete input string
+     * @param start the start of stringPart in the input string
+     * @param index the current index in the input string, where stringPart ends
      * @param t the following character
-     * @param input the complete input string
-     * @param index the current index in the input string
      * @param value the value to add to the index
-     * @return a pair containing
-     *                  true/false depending on whether (stringPart + t) is contained in the subtree starting in inputs
-     *                  the last node that can be reached by following the path denoted by stringPart starting from inputs
-     *         
+     * @return true/false depending on whether (stringPart + t) is contained in the subtree starting in inputs
      */
-    private Pair<Boolean, Node> testAndSplit(final Node inputs, final String stringPart, final int t, final String input, final int index, final int value) {
+    private boolean testAndSplit(final Node inputs, final String key, final int start, final int index, final int t, final int value) {
         // descend the tree as far as possible
-        var ret = canonize(inputs, stringPart);
-        Node s = ret.first();
-        String str = ret.second();
+        Node s = canonize(inputs, key, start, index);
+        int strStart = canonizedStart;
 
-        if (!"".equals(str)) {
-            Edge g = s.getEdge(str.codePointAt(0));
+        if (strStart < index) {
+            int strLength = index - strStart;
+            Edge g = s.getEdge(key.codePointAt(strStart));
 
-            // After canonize, 'str' is the remainder of the string that could not be
+            // After canonize, key[strStart, index) is the remainder of the string that could not be
             // traversed by following a full edge. We get the edge for the first
-            // character of 'str'. If this edge doesn't exist, it means we have a
+            // character of the remainder. If this edge doesn't exist, it means we have a
             // mismatch and a new edge needs to be created. Return false to signal this.
             if (g == null) {
-                return new Pair<>(false, s);
+                splitNode = s;
+                return false;
             }
-            // must see whether "str" is substring of the label of an edge
-            if (g.length() > str.length() && g.codePointAt(str.length()) == t) {
-                return new Pair<>(true, s);
+            // must see whether the remainder is substring of the label of an edge
+            if (g.length() > strLength && g.codePointAt(strLength) == t) {
+                splitNode = s;
+                return true;
             } else {
                 // need to split the edge
                 
                 // build a new node
                 Node r = new Node();
                 // build a new edge
-                Edge newedge = new Edge(str, r);
+                Edge newedge = new Edge(key, strStart, index, r);
 
-                g.setLabel(g.getSource(), g.getStart() + str.length(), g.getEnd());
+                g.setLabel(g.getSource(), g.getStart() + strLength, g.getEnd());
 
                 // link s -> r
-                r.addEdge(g.codePointAt(0), g);
-                s.addEdge(str.codePointAt(0), newedge);
+                linkAbove(r, g);
+                s.addEdge(key.codePointAt(strStart), newedge);
 
-                return new Pair<>(false, r);
+                splitNode = r;
+                return false;
             }
 
         } else {
+            splitNode = s;
             Edge e = s.getEdge(t);
             if (null == e) {
                 // if there is no t-transtion from s
-                return new Pair<>(false, s);
+                return false;
             } else {
-                int remainderLength = input.length() - index;
+                int remainderLength = key.length() - index;
                 
-                if (remainderLength == e.length() && e.regionMatches(0, input, index, remainderLength)) {
+                if (remainderLength == e.length() && e.regionMatches(0, key, index, remainderLength)) {
                     // update payload of destination node
-                    e.getDest().addRef(value);
-                    return new Pair<>(true, s);
-                } else if (remainderLength > e.length() && e.regionMatches(0, input, index, e.length())) {
-                    return new Pair<>(true, s);
-                } else if (e.length() > remainderLength && e.regionMatches(0, input, index, remainderLength)) {
+                    e.getDest().addRef(value, activeWeight, counted);
+                    return true;
+                } else if (remainderLength > e.length() && e.regionMatches(0, key, index, e.length())) {
+                    return true;
+                } else if (e.length() > remainderLength && e.regionMatches(0, key, index, remainderLength)) {
                     // need to split as above
                     Node newNode = new Node();
-                    newNode.addRef(value);
-
-                    Edge newEdge = new Edge(input, index, input.length(), newNode);
+                    Edge newEdge = new Edge(key, index, key.length(), newNode);
 
                     e.setLabel(e.getSource(), e.getStart() + remainderLength, e.getEnd());
 
-                    newNode.addEdge(e.codePointAt(0), e);
+                    linkAbove(newNode, e);
 
                     s.addEdge(t, newEdge);
 
-                    return new Pair<>(false, s);
+                    // added once the node is linked, so that counts are updated above it
+                    newNode.addRef(value, activeWeight, counted);
+
+                    return false;
                 } else {
                     // they are different words. No prefix. but they may still share some common substr
-                    return new Pair<>(true, s);
+                    return true;
                 }
             }
         }
@@ -299,65 +1341,75 @@ public class GeneralizedSuffixTree {
     }
 
     /**
-     * Return a (Node, String) (n, remainder) pair such that n is a farthest descendant of
-     * s (the input node) that can be reached by following a path of edges denoting
-     * a prefix of inputstr and remainder will be string that must be
-     * appended to the concatenation of labels from s to n to get inpustr.
+     * Adds the edge <tt>e</tt> to the new node splitting it, which holds the same indexes
+     * as the destination of <tt>e</tt>, including the index being added if it does.
      */
-    private Pair<Node, String> canonize(final Node s, final String inputstr) {
+    private void linkAbove(Node node, Edge e) {
+        node.addEdge(e.codePointAt(0), e);
+        if (counted != null && counted.contains(e.getDest())) {
+            counted.add(node);
+        }
+    }
+
+    /**
+     * Returns the farthest descendant n of s (the input node) that can be reached by following
+     * a path of edges denoting a prefix of <tt>key[start, end)</tt>.
+     *
+     * The start of the remainder, i.e. the string that must be appended to the concatenation
+     * of labels from s to n to get <tt>key[start, end)</tt>, is stored in {@link #canonizedStart}.
+     */
+    private Node canonize(final Node s, final String key, final int start, final int end) {
+        Node currentNode = s;
+        int idx = start;
+
+        if (idx < end) {
+            Edge g = s.getEdge(key.codePointAt(idx));
 
-        if ("".equals(inputstr)) {
-            return new Pair<>(s, inputstr);
-        } else {
-            Node currentNode = s;
-            int idx = 0;
-            Edge g = s.getEdge(inputstr.codePointAt(idx));
-            
             // descend the tree as long as a proper label is found
-            while (g != null && (inputstr.length() - idx) >= g.length()) {
+            while (g != null && (end - idx) >= g.length()) {
                 idx += g.length();
                 currentNode = g.getDest();
-                if (idx < inputstr.length()) {
-                    g = currentNode.getEdge(inputstr.codePointAt(idx));
+                if (idx < end) {
+                    g = currentNode.getEdge(key.codePointAt(idx));
                 } else {
                     g = null;
                 }
             }
-
-            return new Pair<>(currentNode, inputstr.substring(idx));
         }
+
+        canonizedStart = idx;
+        return currentNode;
     }
 
     /**
-     * Updates the tree starting from inputNode and by adding stringPart.
+     * Updates the tree starting from the active point, by adding the character at <tt>index</tt>.
      * 
-     * Returns a reference (Node, String) pair for the string that has been added so far.
+     * The active point (activeNode, activeStart) denotes the string <tt>key[activeStart, index)</tt>,
+     * and is updated to be a reference pair for the string <tt>key[activeStart, end)</tt> that has
+     * been added so far.
      * This means:
-     * - the Node will be the Node that can be reached by the longest path string (S1)
+     * - activeNode will be the Node that can be reached by the longest path string (S1)
      *   that can be obtained by concatenating consecutive edges in the tree and
      *   that is a substring of the string added so far to the tree.
-     * - the String will be the remainder that must be added to S1 to get the string
-     *   added so far.
+     * - activeStart will be the start of the remainder that must be added to S1 to get
+     *   the string added so far.
      * 
-     * @param inputNode the node to start from
-     * @param stringPart the string to add to the tree
-     * @param input the complete input string
+     * @param key the complete input string
      * @param index the current index in the input string
+     * @param end the index following the current character in the input string
+     * @param newChar the current character
      * @param value the value to add to the index
      */
-    private Pair<Node, String> update(final Node inputNode, final String stringPart, final String input, final int index, final int value) {
-        Node s = inputNode;
-        String tempstr = stringPart;
-        int newChar = stringPart.codePointBefore(stringPart.length());
+    private void update(final String key, final int index, final int end, final int newChar, final int value) {
+        Node s = activeNode;
+        int start = activeStart;
 
         // line 1
         Node oldroot = root;
 
         // line 1b
-        var ret = testAndSplit(s, stringPart.substring(0, stringPart.length() - Character.charCount(newChar)), newChar, input, index, value);
-
-        Node r = ret.second();
-        boolean endpoint = ret.first();
+        boolean endpoint = testAndSplit(s, key, start, index, newChar, value);
+        Node r = splitNode;
 
         Node leaf;
         // line 2
@@ -371,9 +1423,9 @@ public class GeneralizedSuffixTree {
             } else {
                 // must build a new leaf
                 leaf = new Node();
-                leaf.addRef(value);
-                Edge newedge = new Edge(input, index, input.length(), leaf);
+                Edge newedge = new Edge(key, index, key.length(), leaf);
                 r.addEdge(newChar, newedge);
+                leaf.addRef(value, activeWeight, counted);
             }
 
             // update suffix link for newly created leaf
@@ -394,19 +1446,17 @@ public class GeneralizedSuffixTree {
             if (null == s.getSuffix()) { // root node
                 assert (root == s);
                 // this is a special case to handle what is referred to as node _|_ on the paper
-                if (tempstr.length() > 0) {
-                     tempstr = tempstr.substring(Character.charCount(tempstr.codePointAt(0)));
+                if (start < end) {
+                    start += Character.charCount(key.codePointAt(start));
                 }
             } else {
-                var canret = canonize(s.getSuffix(), safeCutLastChar(tempstr));
-                s = canret.first();
-                tempstr = (canret.second() + new String(Character.toChars(tempstr.codePointBefore(tempstr.length()))));
+                s = canonize(s.getSuffix(), key, start, index);
+                start = canonizedStart;
             }
 
             // line 7
-            ret = testAndSplit(s, safeCutLastChar(tempstr), newChar, input, index, value);
-            r = ret.second();
-            endpoint = ret.first();
+            endpoint = testAndSplit(s, key, start, index, newChar, value);
+            r = splitNode;
 
         }
 
@@ -414,24 +1464,87 @@ public class GeneralizedSuffixTree {
         if (oldroot != root) {
             oldroot.setSuffix(r);
         }
-        oldroot = root;
 
-        return new Pair<>(s, tempstr);
+        activeNode = s;
+        activeStart = start;
+    }
+
+    /**
+     * Writes a snapshot of the GST to the given file.
+     *
+     * @param path the file to write, replaced if it already exists
+     * @throws IOException if the file cannot be written
+     * @see GeneralizedSuffixTree#writeTo(OutputStream)
+     */
+    public void writeTo(Path path) throws IOException {
+        try (OutputStream out = Files.newOutputStream(path)) {
+            writeTo(out);
+        }
+    }
+
+    /**
+     * Writes a snapshot of the GST to the given stream.
+     *
+     * The snapshot uses a compact, versioned binary format storing the nodes, edges,
+     * suffix links and payloads of the tree as they are, so that it can be restored by
+     * {@link #readFrom(InputStream)} without running the construction algorithm again.
+     *
+     * @param out the stream to write to, which is not closed
+     * @throws IOException if the stream cannot be written
+     */
+    public void writeTo(OutputStream out) throws IOException {
+        var data = new DataOutputStream(new BufferedOutputStream(out));
+        TreeSnapshot.write(this, data);
+        data.flush();
+    }
+
+    /**
+     * Restores a GST from a snapshot stored in the given file.
+     *
+     * @param path the file to read
+     * @return the restored GST
+     * @throws IOException if the file cannot be read or does not contain a valid snapshot
+     * @see GeneralizedSuffixTree#readFrom(InputStream)
+     */
+    public static GeneralizedSuffixTree readFrom(Path path) throws IOException {
+        try (InputStream in = Files.newInputStream(path)) {
+            return readFrom(in);
+        }
+    }
+
+    /**
+     * Restores a GST from a snapshot written by {@link #writeTo(OutputStream)}.
+     *
+     * The restored GST is identical to the one the snapshot was taken from, and can
+     * keep receiving new keys with put.
+     *
+     * @param in the stream to read from, which is not closed. Since reads are buffered,
+     *           the stream may be read beyond the end of the snapshot.
+     * @return the restored GST
+     * @throws IOException if the stream cannot be read or does not contain a valid snapshot
+     */
+    public static GeneralizedSuffixTree readFrom(InputStream in) throws IOException {
+        return TreeSnapshot.read(new DataInputStream(new BufferedInputStream(in)));
     }
 
     Node getRoot() {
         return root;
     }
 
-    private String safeCutLastChar(String seq) {
-        if (seq.length() == 0) {
-            return "";
-        }
-        return seq.substring(0, seq.length() - Character.charCount(seq.codePointBefore(seq.length())));
+    int getLast() {
+        return last;
     }
 
+    /**
+     * Returns the number of distinct indexes stored in the GST.
+     *
+     * Result counts are kept up to date by put, so calling this method is no
+     * longer required before using searchWithCount.
+     *
+     * @return the number of distinct indexes in the GST
+     */
     public int computeCount() {
-        return root.computeAndCacheCount();
+        return root.getResultCount();
     }
 
     /**
@@ -443,8 +1556,16 @@ public class GeneralizedSuffixTree {
     }
 
     /**
-     * A private class used to return a tuples of two elements
+     * The statistics of the cache of search results.
+     *
+     * @param hits the number of searches answered by the cache
+     * @param misses the number of searches that were not in the cache
+     * @param evictions the number of entries evicted to stay within the max weight
+     * @param invalidations the number of entries dropped after put or remove
+     * @param size the number of entries in the cache
+     * @param weight the total weight of the entries in the cache
+     * @see GeneralizedSuffixTree#enableCache(long)
      */
-    private record Pair<A, B>(A first, B second) {
+    public record CacheStats(long hits, long misses, long evictions, long invalidations, int size, long weight) {
     }
 }
\ No newline at end of file
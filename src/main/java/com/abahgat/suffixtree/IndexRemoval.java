@@ -0,0 +1,143 @@
+/**
+ * Copyright 2012 Alessandro Bahgat Shehata
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.abahgat.suffixtree;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Removes an index from a {@link GeneralizedSuffixTree}, visiting only the nodes that
+ * hold it and their ancestors.
+ *
+ * Every suffix of a key ends in a node holding the index of the key, and the suffix
+ * links chain the node of the key to the nodes of all of its suffixes, down to the
+ * root: following them from the nodes of the keys the index was added with finds all
+ * the nodes holding it, including the root, which the construction may add it to.
+ * The index is removed from their payloads, and the result count of each of their
+ * ancestors is decremented once, so that counts stay exact. The nodes whose largest
+ * index was the removed one compute it again, bottom up.
+ *
+ * Finally, the nodes left empty are removed from the tree.
+ */
+final class IndexRemoval {
+
+    private IndexRemoval() {
+    }
+
+    /**
+     * Removes <tt>index</tt> from the tree rooted in <tt>root</tt>.
+     *
+     * @param root the root of the tree
+     * @param keyNodes the nodes of the keys the index was added with
+     * @param index the index to remove
+     */
+    static void remove(Node root, Collection<Node> keyNodes, int index) {
+        Set<Node> holders = identitySet();
+        for (Node key : keyNodes) {
+            for (Node n = key; n != null && holders.add(n); n = n.getSuffix()) {
+                // the rest of the chain was followed already from another key
+            }
+        }
+
+        // the nodes whose subtree contained the index, and the ones among them whose
+        // largest index it was
+        Set<Node> affected = identitySet();
+        List<Node> outdated = new ArrayList<>();
+        for (Node n : holders) {
+            if (!n.removeIndex(index)) {
+                continue;
+            }
+            for (Node a = n; a != null && affected.add(a); a = a.getParent()) {
+                a.uncount();
+                if (a.getMaxIndex() == index) {
+                    outdated.add(a);
+                }
+            }
+        }
+
+        // largest indexes are computed from the ones of the children, so the outdated
+        // children of a node are updated before it
+        var pending = new ArrayDeque<Node>();
+        for (Node n : outdated) {
+            pending.push(n);
+            while (!pending.isEmpty()) {
+                Node top = pending.peek();
+                Node child = outdatedChild(top, index);
+                if (child != null) {
+                    pending.push(child);
+                } else {
+                    pending.pop().updateMaxIndex();
+                }
+            }
+        }
+
+        for (Node n : holders) {
+            reclaim(n);
+        }
+    }
+
+    /**
+     * Returns a child of <tt>node</tt> whose largest index is still the removed one,
+     * or null if there is none
+     */
+    private static Node outdatedChild(Node node, int index) {
+        for (int i = 0; i < node.edgeCount(); i++) {
+            Node child = node.edgeAt(i).getDest();
+            if (child.getResultCount() > 0 && child.getMaxIndex() == index) {
+                return child;
+            }
+        }
+        return null;
+    }
+
+    private static Set<Node> identitySet() {
+        return Collections.newSetFromMap(new IdentityHashMap<>());
+    }
+
+    /**
+     * Removes <tt>node</tt> from the tree, if it is empty, along with the ancestors that
+     * are left empty by its removal.
+     *
+     * Empty nodes have no indexes in their subtree, so removing them does not change the
+     * result counts of their ancestors.
+     */
+    private static void reclaim(Node node) {
+        // a node without parent was already removed, or is the root
+        for (Node n = node; n.getParent() != null && n.isRemovable(); ) {
+            Node parent = n.getParent();
+            parent.removeEdge(incomingCodePoint(parent, n));
+            n = parent;
+        }
+    }
+
+    /**
+     * Returns the first code point of the edge from <tt>parent</tt> to <tt>child</tt>
+     */
+    private static int incomingCodePoint(Node parent, Node child) {
+        for (int i = 0; i < parent.edgeCount(); i++) {
+            Edge e = parent.edgeAt(i);
+            if (e.getDest() == child) {
+                return e.codePointAt(0);
+            }
+        }
+        throw new IllegalStateException("Node not found among the children of its parent");
+    }
+}
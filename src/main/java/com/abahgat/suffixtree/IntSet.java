@@ -0,0 +1,211 @@
+/**
+ * Copyright 2012 Alessandro Bahgat Shehata
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.abahgat.suffixtree;
+
+import java.util.AbstractSet;
+import java.util.LinkedHashSet;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+import java.util.Set;
+
+/**
+ * A specialized implementation of Set that stores native int values in an
+ * open addressing hash table, to avoid boxing every result of a search.
+ * Values are kept in insertion order, so that the first <tt>n</tt> results
+ * collected are also the first ones returned.
+ *
+ * Implements only the operations that are needed within the suffix tree context.
+ */
+class IntSet extends AbstractSet<Integer> {
+    /**
+     * The values in the set, in insertion order
+     */
+    private int[] values;
+    /**
+     * The hash table. Each slot contains the position (plus one) in
+     * <tt>values</tt> of the value hashed there, or 0 if the slot is empty.
+     */
+    private int[] slots;
+    private int size = 0;
+    private static final int START_SIZE = 8;
+
+    IntSet() {
+        this(START_SIZE);
+    }
+
+    /**
+     * Creates a set with room for <tt>capacity</tt> values before it has to grow, so
+     * that sets known to stay small, such as the results of a limited search, do not
+     * allocate more than they need.
+     *
+     * @param capacity the number of values expected, rounded up to a power of two
+     */
+    IntSet(int capacity) {
+        int length = capacity <= 1 ? 1 : Integer.highestOneBit(capacity - 1) << 1;
+        values = new int[length];
+        slots = new int[2 * length];
+    }
+
+    /**
+     * Adds the given value to the set.
+     *
+     * @return true if the value was not already contained in the set
+     */
+    boolean add(int value) {
+        int mask = slots.length - 1;
+        int slot = hash(value) & mask;
+        while (slots[slot] != 0) {
+            if (values[slots[slot] - 1] == value) {
+                return false;
+            }
+            slot = (slot + 1) & mask;
+        }
+        if (size == values.length) {
+            grow();
+            return add(value);
+        }
+        values[size++] = value;
+        slots[slot] = size;
+        return true;
+    }
+
+    boolean contains(int value) {
+        int mask = slots.length - 1;
+        int slot = hash(value) & mask;
+        while (slots[slot] != 0) {
+            if (values[slots[slot] - 1] == value) {
+                return true;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return false;
+    }
+
+    /**
+     * Returns the position the given value was added in, -1 if it is not in the set
+     */
+    int indexOf(int value) {
+        int mask = slots.length - 1;
+        int slot = hash(value) & mask;
+        while (slots[slot] != 0) {
+            if (values[slots[slot] - 1] == value) {
+                return slots[slot] - 1;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the value that was added in the given position
+     */
+    int get(int position) {
+        return values[position];
+    }
+
+    /**
+     * Returns the values in the set, in insertion order
+     */
+    int[] toIntArray() {
+        var copy = new int[size];
+        System.arraycopy(values, 0, copy, 0, size);
+        return copy;
+    }
+
+    /**
+     * Returns a modifiable copy of the set, holding its values in insertion order.
+     *
+     * The set itself only supports adding values: this is the form in which results are
+     * handed out as a Collection, so that callers can modify them as they please.
+     */
+    Set<Integer> toModifiableSet() {
+        return modifiableSet(values, size);
+    }
+
+    /**
+     * Returns a modifiable set holding the given distinct values, in the same order
+     */
+    static Set<Integer> modifiableSet(int[] values) {
+        return modifiableSet(values, values.length);
+    }
+
+    private static Set<Integer> modifiableSet(int[] values, int length) {
+        Set<Integer> copy = LinkedHashSet.newLinkedHashSet(length);
+        for (int i = 0; i < length; i++) {
+            copy.add(values[i]);
+        }
+        return copy;
+    }
+
+    @Override
+    public boolean add(Integer value) {
+        return add(value.intValue());
+    }
+
+    @Override
+    public boolean contains(Object value) {
+        return value instanceof Integer i && contains(i.intValue());
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public PrimitiveIterator.OfInt iterator() {
+        return new PrimitiveIterator.OfInt() {
+            private int position = 0;
+
+            @Override
+            public boolean hasNext() {
+                return position < size;
+            }
+
+            @Override
+            public int nextInt() {
+                if (position >= size) {
+                    throw new NoSuchElementException();
+                }
+                return values[position++];
+            }
+        };
+    }
+
+    /**
+     * Doubles the capacity of the set, rehashing all of its values.
+     */
+    private void grow() {
+        var copy = new int[values.length * 2];
+        System.arraycopy(values, 0, copy, 0, size);
+        values = copy;
+        slots = new int[2 * values.length];
+        int mask = slots.length - 1;
+        for (int i = 0; i < size; i++) {
+            int slot = hash(values[i]) & mask;
+            while (slots[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            slots[slot] = i + 1;
+        }
+    }
+
+    private static int hash(int value) {
+        // spread the bits, as indexes are often dense and sequential
+        int h = value * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
@@ -0,0 +1,400 @@
+/**
+ * Copyright 2012 Alessandro Bahgat Shehata
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.abahgat.suffixtree;
+
+import java.util.Arrays;
+
+/**
+ * The indexes stored in the tree, each with the keys it was added with and its weight.
+ *
+ * Keys are used to turn the nodes where the suffixes of a key end into offsets within
+ * the key. Most indexes are added with a single key, which is stored as it is; the keys
+ * of indexes added more than once are stored in an array, which doubles as it fills
+ * up, along with their number. Keys are the same strings
+ * edge labels are taken from, so that the table only takes one reference per index.
+ *
+ * Each key of an index with several keys is also given an id, which the nodes where its
+ * suffixes end record to tell it from the other keys of the index. Ids are dense: the
+ * ones of removed indexes are given to the next keys.
+ *
+ * Entries are stored densely, in the same positions of a few parallel arrays, and found
+ * through an open addressing hash table, as in {@link IntSet}. Removing an index moves the
+ * last entry in its place, and the arrays shrink as the table empties, so that the
+ * table only takes memory for the indexes that are in the tree.
+ */
+class KeyTable {
+    private static final int START_SIZE = 8;
+
+    /**
+     * The indexes in the table, whose keys and weights are in the same positions of
+     * {@link #keys} and {@link #weights}
+     */
+    private int[] indexes = new int[START_SIZE];
+    /**
+     * For each index, its only key as a String or all of its keys as a String[], whose
+     * first {@link #keyCounts} elements are used
+     */
+    private Object[] keys = new Object[START_SIZE];
+    /**
+     * The number of keys of each index stored as a String[], null as long as every index
+     * has a single key
+     */
+    private int[] keyCounts;
+    /**
+     * The ids of the keys of each index stored as a String[], in the same order as the
+     * keys, null as long as every index has a single key
+     */
+    private int[][] keyIds;
+    /**
+     * For each key id, the index of the key and its ordinal among the keys of the index,
+     * one after the other
+     */
+    private int[] idKeys = new int[0];
+    /**
+     * The number of key ids given so far, including the released ones
+     */
+    private int idEnd = 0;
+    /**
+     * The released key ids, which are given to the next keys
+     */
+    private int[] releasedIds = new int[0];
+    private int releasedIdCount = 0;
+    /**
+     * The weight of each index, null as long as every index weighs 0
+     */
+    private float[] weights;
+    /**
+     * The hash table. Each slot contains the position (plus one) in <tt>indexes</tt> of the
+     * index hashed there, or 0 if the slot is empty.
+     */
+    private int[] slots = new int[2 * START_SIZE];
+    private int size = 0;
+
+    /**
+     * Records that <tt>index</tt> was added with the given key, which it was not added
+     * with before, and with the given weight.
+     *
+     * When the index gets its second key, both of its keys are given an id, and so is
+     * every key after that.
+     */
+    void add(int index, String key, float weight) {
+        int position = positionOf(index);
+        if (position < 0) {
+            if (size == indexes.length) {
+                resize(2 * indexes.length);
+            }
+            position = size++;
+            indexes[position] = index;
+            keys[position] = key;
+            slots[freeSlot(index)] = size;
+        } else if (keys[position] instanceof String only) {
+            if (keyCounts == null) {
+                keyCounts = new int[indexes.length];
+                keyIds = new int[indexes.length][];
+            }
+            keys[position] = new String[] { only, key, null, null };
+            keyCounts[position] = 2;
+            keyIds[position] = new int[] { newKeyId(index, 0), newKeyId(index, 1), 0, 0 };
+        } else {
+            String[] many = (String[]) keys[position];
+            int count = keyCounts[position];
+            if (count == many.length) {
+                many = Arrays.copyOf(many, 2 * count);
+                keys[position] = many;
+                keyIds[position] = Arrays.copyOf(keyIds[position], 2 * count);
+            }
+            many[count] = key;
+            keyIds[position][count] = newKeyId(index, count);
+            keyCounts[position] = count + 1;
+        }
+        if (weights == null && weight != 0) {
+            weights = new float[indexes.length];
+        }
+        if (weights != null) {
+            weights[position] = weight;
+        }
+    }
+
+    /**
+     * Adds all the entries of <tt>other</tt>, whose indexes are not in this table, to
+     * this table. Their keys are given new ids.
+     */
+    void addAll(KeyTable other) {
+        for (int i = 0; i < other.size; i++) {
+            for (int j = 0; j < other.keyCountAt(i); j++) {
+                add(other.indexes[i], other.keyAt(i, j), other.weightAt(i));
+            }
+        }
+    }
+
+    /**
+     * Removes the given index from the table, so that it can be added again with different
+     * keys and weight.
+     *
+     * @return true if the index was in the table
+     */
+    boolean remove(int index) {
+        int mask = slots.length - 1;
+        int slot = hash(index) & mask;
+        while (slots[slot] != 0 && indexes[slots[slot] - 1] != index) {
+            slot = (slot + 1) & mask;
+        }
+        if (slots[slot] == 0) {
+            return false;
+        }
+        int position = slots[slot] - 1;
+        deleteSlot(slot);
+        if (keyIds != null && keyIds[position] != null) {
+            for (int j = 0; j < keyCounts[position]; j++) {
+                releaseKeyId(keyIds[position][j]);
+            }
+        }
+        size--;
+        if (position < size) {
+            // the last entry takes the place of the removed one
+            int moved = indexes[size];
+            int movedSlot = hash(moved) & mask;
+            while (slots[movedSlot] != size + 1) {
+                movedSlot = (movedSlot + 1) & mask;
+            }
+            slots[movedSlot] = position + 1;
+            indexes[position] = moved;
+            keys[position] = keys[size];
+            if (keyCounts != null) {
+                keyCounts[position] = keyCounts[size];
+                keyIds[position] = keyIds[size];
+            }
+            if (weights != null) {
+                weights[position] = weights[size];
+            }
+        }
+        keys[size] = null;
+        if (keyIds != null) {
+            keyIds[size] = null;
+        }
+        if (indexes.length > START_SIZE && size < indexes.length / 4) {
+            resize(indexes.length / 2);
+        }
+        return true;
+    }
+
+    /**
+     * Tests whether the given index is in the table
+     */
+    boolean contains(int index) {
+        return positionOf(index) >= 0;
+    }
+
+    /**
+     * Returns the weight of the given index, 0 if it is not in the table
+     */
+    float weightOf(int index) {
+        int position = positionOf(index);
+        return position < 0 ? 0 : weightAt(position);
+    }
+
+    /**
+     * Returns the only key <tt>index</tt> was added with, or null if it has several keys
+     * or none
+     */
+    String onlyKey(int index) {
+        int position = positionOf(index);
+        return position >= 0 && keys[position] instanceof String only ? only : null;
+    }
+
+    /**
+     * Returns all the keys <tt>index</tt> was added with, in a new array.
+     *
+     * Searches read the keys in place with {@link #keyCountAt(int)} and
+     * {@link #keyAt(int, int)} instead.
+     */
+    String[] keysOf(int index) {
+        int position = positionOf(index);
+        return position < 0 ? new String[0] : keysAt(position);
+    }
+
+    /**
+     * Returns the number of indexes in the table
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Returns the index in the given position
+     */
+    int indexAt(int position) {
+        return indexes[position];
+    }
+
+    /**
+     * Returns the keys of the index in the given position, in a new array
+     */
+    String[] keysAt(int position) {
+        Object known = keys[position];
+        return known instanceof String only ? new String[] { only } : Arrays.copyOf((String[]) known, keyCounts[position]);
+    }
+
+    /**
+     * Returns the number of keys of the index in the given position
+     */
+    int keyCountAt(int position) {
+        return keys[position] instanceof String ? 1 : keyCounts[position];
+    }
+
+    /**
+     * Returns the key the index in the given position was added with in the given order,
+     * from 0 to {@link #keyCountAt(int)} - 1
+     */
+    String keyAt(int position, int ordinal) {
+        Object known = keys[position];
+        return known instanceof String only ? only : ((String[]) known)[ordinal];
+    }
+
+    /**
+     * Returns the weight of the index in the given position
+     */
+    float weightAt(int position) {
+        return weights == null ? 0 : weights[position];
+    }
+
+    /**
+     * Returns the id of the key the index in the given position was added with in the
+     * given order, which must be one of several keys
+     */
+    int keyIdAt(int position, int ordinal) {
+        return keyIds[position][ordinal];
+    }
+
+    /**
+     * Returns the index of the key with the given id
+     */
+    int indexOfKeyId(int id) {
+        return idKeys[2 * id];
+    }
+
+    /**
+     * Returns the ordinal of the key with the given id among the keys of its index
+     */
+    int ordinalOfKeyId(int id) {
+        return idKeys[2 * id + 1];
+    }
+
+    /**
+     * Gives an id to the key of <tt>index</tt> with the given ordinal: the last one
+     * released, if any, or the next one otherwise
+     */
+    private int newKeyId(int index, int ordinal) {
+        int id;
+        if (releasedIdCount > 0) {
+            id = releasedIds[--releasedIdCount];
+        } else {
+            if (2 * idEnd == idKeys.length) {
+                idKeys = Arrays.copyOf(idKeys, Math.max(2 * START_SIZE, 2 * idKeys.length));
+            }
+            id = idEnd++;
+        }
+        idKeys[2 * id] = index;
+        idKeys[2 * id + 1] = ordinal;
+        return id;
+    }
+
+    private void releaseKeyId(int id) {
+        if (releasedIdCount == releasedIds.length) {
+            releasedIds = Arrays.copyOf(releasedIds, Math.max(START_SIZE, 2 * releasedIdCount));
+        }
+        releasedIds[releasedIdCount++] = id;
+        if (releasedIdCount == idEnd) {
+            // no key has an id anymore
+            idKeys = new int[0];
+            releasedIds = new int[0];
+            releasedIdCount = 0;
+            idEnd = 0;
+        }
+    }
+
+    /**
+     * Returns the position of the given index, -1 if it is not in the table
+     */
+    int positionOf(int index) {
+        int mask = slots.length - 1;
+        int slot = hash(index) & mask;
+        while (slots[slot] != 0) {
+            if (indexes[slots[slot] - 1] == index) {
+                return slots[slot] - 1;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the empty slot where the given index, which is not in the table, goes
+     */
+    private int freeSlot(int index) {
+        int mask = slots.length - 1;
+        int slot = hash(index) & mask;
+        while (slots[slot] != 0) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    /**
+     * Empties the given slot, moving back the following entries of the same cluster that
+     * could not be found anymore, so that lookups need no tombstones.
+     */
+    private void deleteSlot(int slot) {
+        int mask = slots.length - 1;
+        int hole = slot;
+        int next = (hole + 1) & mask;
+        while (slots[next] != 0) {
+            int home = hash(indexes[slots[next] - 1]) & mask;
+            // the entry can fill the hole unless its home lies cyclically in (hole, next]
+            if (((next - home) & mask) >= ((next - hole) & mask)) {
+                slots[hole] = slots[next];
+                hole = next;
+            }
+            next = (next + 1) & mask;
+        }
+        slots[hole] = 0;
+    }
+
+    /**
+     * Changes the capacity of the table, rehashing all of its indexes.
+     */
+    private void resize(int capacity) {
+        indexes = Arrays.copyOf(indexes, capacity);
+        keys = Arrays.copyOf(keys, capacity);
+        if (keyCounts != null) {
+            keyCounts = Arrays.copyOf(keyCounts, capacity);
+            keyIds = Arrays.copyOf(keyIds, capacity);
+        }
+        if (weights != null) {
+            weights = Arrays.copyOf(weights, capacity);
+        }
+        slots = new int[2 * capacity];
+        for (int i = 0; i < size; i++) {
+            slots[freeSlot(indexes[i])] = i + 1;
+        }
+    }
+
+    private static int hash(int value) {
+        // spread the bits, as indexes are often dense and sequential
+        int h = value * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
@@ -15,9 +15,11 @@
  */
 package com.abahgat.suffixtree;
 
-import java.util.Collection;
-import java.util.HashSet;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.util.Map;
+import java.util.PrimitiveIterator;
 import java.util.Set;
 
 /**
@@ -25,57 +27,83 @@ import java.util.Set;
  * @see GeneralizedSuffixTree
  */
 class Node {
-
     /**
-     * The payload array used to store the data (indexes) associated with this node.
-     * In this case, it is used to store all property indexes.
-     * 
-     * As it is handled, it resembles an ArrayList: when it becomes full it 
-     * is copied to another bigger array (whose size is equals to data.length +
-     * INCREMENT).
-     * 
-     * Originally it was a List<Integer> but it took too much memory, changing
-     * it to int[] take less memory because indexes are stored using native
-     * types.
+     * Set in {@link #flags} when the payload is made of {@link #value} only
      */
-    private int[] data;
+    private static final byte SINGLE = 1;
     /**
-     * Represents index of the last position used in the data int[] array.
-     * 
-     * It should always be less than data.length
+     * Set in {@link #flags} when the key with index {@link #value} ends in this node
      */
-    private int lastIdx = 0;
+    private static final byte SINGLE_KEY = 2;
+
     /**
-     * The starting size of the int[] array containing the payload
+     * The payload used to store the data (indexes) associated with this node.
+     * In this case, it is used to store all property indexes.
+     * 
+     * Originally it was a List<Integer> but it took too much memory; it was then
+     * changed to an int[], growing as an ArrayList does. Indexes are now stored
+     * in a compressed {@link PostingList}, which is only allocated once the node
+     * holds two indexes, or the suffix of a key of an index with several keys: most
+     * nodes hold one index at most, which is stored in {@link #value}.
+     *
+     * The list also records the keys ending in this node, i.e. the indexes whose
+     * suffix stored here starts at the beginning of the key, and the ids of the keys
+     * of indexes with several keys whose suffixes end here.
+     * @see PostingList#getKeys()
+     * @see PostingList#getOwners()
      */
-    private static final int START_SIZE = 0;
+    private PostingList data;
     /**
-     * The increment in size used when the payload array is full
+     * The only index in the payload, when {@link #SINGLE} is set in {@link #flags}
      */
-    private static final int INCREMENT = 8;
+    private int value;
     /**
-     * The size at which we increment by twice {@link #INCREMENT}
+     * Whether the payload is made of {@link #value} only, and whether its key ends
+     * in this node. A flag rather than a sentinel value, as any int is a valid index.
      */
-    private static final int DOUBLE_INCREMENT_THRESHOLD = 4 * INCREMENT;
+    private byte flags;
     /**
      * The set of edges starting from this node
      */
-    private final Map<Integer, Edge> edges;
+    private final EdgeBag edges;
     /**
      * The suffix link as described in Ukkonen's paper.
      * if str is the string denoted by the path from the root to this, this.suffix
      * is the node denoted by the path that corresponds to str without the first char.
      */
     private Node suffix;
+    /**
+     * The parent of this node, i.e. the node having an edge pointing to <tt>this</tt>.
+     */
+    private Node parent;
     /**
      * The total number of <em>different</em> results that are stored in this
      * node and in underlying ones (i.e. nodes that can be reached through paths
      * starting from <tt>this</tt>.
      * 
-     * This must be calculated explicitly using computeAndCacheCount
-     * @see Node#computeAndCacheCount() 
+     * It is kept up to date as indexes and edges are added to the subtree, and as
+     * indexes are removed from it.
+     * @see Node#countIndex(int, Set)
+     * @see IndexRemoval
+     */
+    private int resultCount = 0;
+    /**
+     * The largest index stored in this node and in underlying ones.
+     *
+     * A subtree whose largest index is smaller than the index being inserted cannot
+     * contain it yet, and one whose largest index is equal to it already does.
+     */
+    private int maxIndex = 0;
+    /**
+     * An upper bound of the weights of the indexes stored in this node and in
+     * underlying ones, used to visit the subtrees holding the heaviest indexes first.
+     *
+     * It is raised as indexes and edges are added to the subtree, and never lowered:
+     * after indexes are removed it may be larger than the weight of any of the
+     * remaining ones.
+     * @see GeneralizedSuffixTree#searchTopK(String, int)
      */
-    private int resultCount = -1;
+    private float maxWeight = Float.NEGATIVE_INFINITY;
 
     /**
      * Creates a new Node
@@ -83,14 +111,13 @@ class Node {
     Node() {
         edges = new EdgeBag();
         suffix = null;
-        data = new int[START_SIZE];
     }
 
     /**
      * Returns all the indexes associated to this node and its children.
      * @return all the indexes associated to this node and its children
      */
-    Collection<Integer> getData() {
+    IntSet getData() {
         return getData(-1);
     }
 
@@ -103,53 +130,26 @@ class Node {
      * @param numElements the number of results to return. Use -1 to get all
      * @return the first <tt>numElements</tt> associated to this node and children
      */
-    Collection<Integer> getData(int numElements) {
-        var ret = new HashSet<Integer>();
-        for (int idx = 0; idx < lastIdx; idx++) {
-            int num = data[idx];
-            ret.add(num);
-            if (ret.size() == numElements) {
-                return ret;
-            }
-        }
-        // need to get more matches from child nodes. This is what may waste time
-        for (Edge e : edges.values()) {
-            if (-1 == numElements || ret.size() < numElements) {
-                for (int num : e.getDest().getData()) {
-                    ret.add(num);
-                    if (ret.size() == numElements) {
-                        return ret;
-                    }
-                }
-            }
-        }
-        return ret;
-    }
-
-    private Set<Integer> computeAndCacheCountRecursive() {
-        var ret = new HashSet<Integer>();
-        for (int idx = 0; idx < lastIdx; idx++) {
-            ret.add(data[idx]);
-        }
-        for (Edge e : edges.values()) {
-            for (int num : e.getDest().computeAndCacheCountRecursive()) {
-                ret.add(num);
-            }
-        }
-
-        resultCount = ret.size();
-        return ret;
+    IntSet getData(int numElements) {
+        return new ResultCursor(this, numElements).drain();
     }
 
     /**
-     * Adds the given <tt>index</tt> to the set of indexes associated with <tt>this</tt>
+     * Adds the given <tt>index</tt>, whose weight is <tt>weight</tt>, to the set of
+     * indexes associated with <tt>this</tt>
+     *
+     * @param counted the nodes whose subtree is known to contain <tt>index</tt>, which
+     *                is updated as it is added to new ones, or null if <tt>index</tt> is
+     *                not smaller than any index in the tree
+     * @see Node#countIndex(int, Set)
      */
-    void addRef(int index) {
+    void addRef(int index, float weight, Set<Node> counted) {
         if (contains(index)) {
             return;
         }
 
-        addIndex(index);
+        addIndex(index, counted);
+        raiseWeight(weight);
 
         // add this reference to all the suffixes as well
         Node iter = this.suffix;
@@ -157,79 +157,248 @@ class Node {
             if (iter.contains(index)) {
                 break;
             }
-            iter.addRef(index);
+            iter.addRef(index, weight, counted);
             iter = iter.suffix;
         }
 
     }
 
+    /**
+     * Records that the key with the given <tt>index</tt> ends in this node, which must
+     * already hold the index.
+     *
+     * @return false if the index was already recorded, as when it is added again with
+     * the same key
+     */
+    boolean addKey(int index) {
+        if (data == null) {
+            if ((flags & SINGLE_KEY) != 0) {
+                return false;
+            }
+            flags |= SINGLE_KEY;
+            return true;
+        }
+        PostingList keys = data.getKeys();
+        if (keys == null) {
+            data.setKeys(new PostingList(index));
+        } else if (keys.contains(index)) {
+            return false;
+        } else {
+            keys.insert(index);
+        }
+        return true;
+    }
+
     /**
      * Tests whether a node contains a reference to the given index.
      * 
-     * <b>IMPORTANT</b>: it works because the array is sorted by construction
-     * 
      * @param index the index to look for
      * @return true <tt>this</tt> contains a reference to index
      */
     private boolean contains(int index) {
-        int low = 0;
-        int high = lastIdx - 1;
-
-        while (low <= high) {
-            int mid = (low + high) >>> 1;
-            int midVal = data[mid];
-
-            if (midVal < index)
-            low = mid + 1;
-            else if (midVal > index)
-            high = mid - 1;
-            else
-            return true;
+        if (data != null) {
+            return data.contains(index);
         }
-        return false;
-        // Java 5 equivalent to
-        // return java.util.Arrays.binarySearch(data, 0, lastIdx, index) >= 0;
+        return (flags & SINGLE) != 0 && value == index;
     }
 
     /**
-     * Computes the number of results that are stored on this node and on its
-     * children, and caches the result.
-     * 
-     * Performs the same operation on subnodes as well
-     * @return the number of results
+     * Returns the number of indexes stored in the payload of this node
      */
-    protected int computeAndCacheCount() {
-        computeAndCacheCountRecursive();
+    int payloadSize() {
+        if (data != null) {
+            return data.size();
+        }
+        return flags & SINGLE;
+    }
+
+    /**
+     * Returns the number of results that are stored on this node and on its
+     * children.
+     */
+    int getResultCount() {
         return resultCount;
     }
 
+    /**
+     * Removes the given index from the payload of this node, and from the keys ending
+     * in it.
+     *
+     * The result counts are left to the caller, which knows the ancestors whose subtree
+     * no longer contains the index.
+     *
+     * @return true if the index was in the payload
+     * @see IndexRemoval
+     */
+    boolean removeIndex(int index) {
+        if (!contains(index)) {
+            return false;
+        }
+        if (data == null) {
+            flags = 0;
+            return true;
+        }
+        if (data.size() == 1) {
+            // the ids of its keys were removed first
+            data = null;
+            return true;
+        }
+        PostingList keys = data.getKeys();
+        if (keys != null && keys.contains(index)) {
+            data.setKeys(without(keys, index));
+        }
+        data.remove(index);
+        inline();
+        return true;
+    }
 
+    /**
+     * Records that a suffix of the key with the given id, of an index with several keys,
+     * ends in this node, which must already hold the index.
+     * @see KeyTable#keyIdAt(int, int)
+     */
+    void addOwner(int id) {
+        if (data == null) {
+            allocate();
+        }
+        PostingList owners = data.getOwners();
+        if (owners == null) {
+            data.setOwners(new PostingList(id));
+        } else if (!owners.contains(id)) {
+            owners.insert(id);
+        }
+    }
 
     /**
-     * Returns the number of results that are stored on this node and on its
-     * children.
-     * Should be called after having called computeAndCacheCount.
-     * 
-     * @throws IllegalStateException when this method is called without having called
-     * computeAndCacheCount first
-     * @see Node#computeAndCacheCount() 
-     * @todo this should raise an exception when the subtree is changed but count
-     * wasn't updated
+     * Removes the id of a key recorded by {@link #addOwner(int)}, if it was recorded
      */
-    public int getResultCount() throws IllegalStateException {
-        if (-1 == resultCount) {
-            throw new IllegalStateException("getResultCount() shouldn't be called without calling computeCount() first");
+    void removeOwner(int id) {
+        PostingList owners = data == null ? null : data.getOwners();
+        if (owners == null || !owners.contains(id)) {
+            return;
         }
+        data.setOwners(without(owners, id));
+        inline();
+    }
 
-        return resultCount;
+    private static PostingList without(PostingList list, int value) {
+        if (list.size() == 1) {
+            return null;
+        }
+        list.remove(value);
+        return list;
+    }
+
+    /**
+     * Moves the payload out of its list and back into {@link #value}, if it is left with a
+     * single index and no key ids
+     */
+    private void inline() {
+        if (data.size() == 1 && data.getOwners() == null) {
+            value = data.last();
+            flags = data.getKeys() == null ? SINGLE : SINGLE | SINGLE_KEY;
+            data = null;
+        }
+    }
+
+    /**
+     * Moves the single index stored in {@link #value} to a list
+     */
+    private void allocate() {
+        data = new PostingList(value);
+        if ((flags & SINGLE_KEY) != 0) {
+            data.setKeys(new PostingList(value));
+        }
+        flags = 0;
+    }
+
+    /**
+     * Decrements the result count of this node, after one of the indexes in its subtree
+     * was removed from it.
+     */
+    void uncount() {
+        resultCount--;
+    }
+
+    /**
+     * Computes the largest index of this node again, from its payload and its children,
+     * whose largest indexes must be up to date, after the largest one was removed.
+     */
+    void updateMaxIndex() {
+        int max = Integer.MIN_VALUE;
+        if (data != null) {
+            max = data.last();
+        } else if ((flags & SINGLE) != 0) {
+            max = value;
+        }
+        for (int i = 0; i < edges.size(); i++) {
+            Node child = edges.valueAt(i).getDest();
+            if (child.resultCount > 0) {
+                max = Math.max(max, child.maxIndex);
+            }
+        }
+        maxIndex = resultCount == 0 ? 0 : max;
+    }
+
+    /**
+     * Tests whether this node can be removed from the tree: it holds no index and has
+     * no children.
+     *
+     * No suffix link can point to such a node from the rest of the tree: if the string
+     * of a node has indexes in its subtree, so does the string without its first char.
+     */
+    boolean isRemovable() {
+        return payloadSize() == 0 && edges.isEmpty();
+    }
+
+    /**
+     * Removes the edge starting with the given character, as when its destination is
+     * removed from the tree.
+     */
+    void removeEdge(int ch) {
+        Edge e = edges.remove(ch);
+        if (e != null) {
+            e.getDest().detach();
+        }
     }
 
+    /**
+     * Releases the references of a node that was removed from the tree
+     */
+    private void detach() {
+        setSuffix(null);
+        parent = null;
+    }
+
+    /**
+     * Adds the edge <tt>e</tt>, starting with the given character, to this node.
+     *
+     * Adding an edge does not change the set of indexes in the subtree of this node,
+     * as long as indexes are added to the nodes only once they are linked to the tree.
+     * There are only a few ways edges are added during construction:
+     * <ul>
+     *     <li>a new node splits an existing edge and becomes the parent of its destination:
+     *     it holds the same indexes as the destination, so their result count is copied</li>
+     *     <li>an existing edge is replaced by one to the new node splitting it, which
+     *     holds the same indexes as the destination of the replaced edge</li>
+     *     <li>a new leaf is added, which holds no index yet</li>
+     * </ul>
+     */
     void addEdge(int ch, Edge e) {
-        edges.put(ch, e);
+        Edge previous = edges.put(ch, e);
+        Node child = e.getDest();
+        child.parent = this;
+        raiseWeight(child.maxWeight);
+
+        if (previous == null && resultCount == 0 && child.resultCount > 0) {
+            // a new node splitting an edge: it holds the same indexes as its only child
+            resultCount = child.resultCount;
+            maxIndex = child.maxIndex;
+        }
     }
 
     /**
-     * Compact the payload array to the minimum size needed to store its current
+     * Compact the payload to the minimum size needed to store its current
      * contents.
      * <p>
      *     This will also compact any {@link Node}s reachable from this one, and
@@ -237,10 +406,8 @@ class Node {
      * </p>
      */
     void compact() {
-        if (lastIdx < data.length) {
-            var copy = new int[lastIdx];
-            System.arraycopy(data, 0, copy, 0, lastIdx);
-            data = copy;
+        if (data != null) {
+            data.compact();
         }
 
         for (Edge e : edges.values()) {
@@ -255,10 +422,186 @@ class Node {
         return edges.get(ch);
     }
 
+    int edgeCount() {
+        return edges.size();
+    }
+
+    /**
+     * Returns the edge in the given position, in the order they are stored in
+     * @see EdgeBag#valueAt(int)
+     */
+    Edge edgeAt(int position) {
+        return edges.valueAt(position);
+    }
+
     Map<Integer, Edge> getEdges() {
         return edges;
     }
 
+    /**
+     * Returns an iterator over the indexes stored in the payload of this node, in
+     * increasing order
+     */
+    PrimitiveIterator.OfInt payload() {
+        var reader = new PostingList.Reader();
+        readPayload(reader);
+        return reader;
+    }
+
+    /**
+     * Starts reading the indexes stored in the payload of this node with <tt>reader</tt>
+     */
+    void readPayload(PostingList.Reader reader) {
+        if (data != null) {
+            reader.reset(data);
+        } else if ((flags & SINGLE) != 0) {
+            reader.reset(value);
+        } else {
+            reader.reset(null);
+        }
+    }
+
+    /**
+     * Starts reading the ids of the keys whose suffixes end in this node with
+     * <tt>reader</tt>
+     * @see Node#addOwner(int)
+     */
+    void readOwners(PostingList.Reader reader) {
+        reader.reset(data == null ? null : data.getOwners());
+    }
+
+    /**
+     * Starts reading the indexes of the keys ending in this node with <tt>reader</tt>
+     */
+    void readKeys(PostingList.Reader reader) {
+        if (data != null) {
+            reader.reset(data.getKeys());
+        } else if ((flags & SINGLE_KEY) != 0) {
+            reader.reset(value);
+        } else {
+            reader.reset(null);
+        }
+    }
+
+    /**
+     * Writes the payload of this node to <tt>out</tt>, along with the keys ending in it.
+     * The ids of keys are not written, as they are given again when the keys are read.
+     *
+     * @see Node#readPayloadFrom(DataInput)
+     */
+    void writePayloadTo(DataOutput out) throws IOException {
+        if (data != null && data.size() == 1) {
+            // stored in a list for its key ids only
+            out.writeByte(data.getKeys() == null ? SINGLE : SINGLE | SINGLE_KEY);
+            out.writeInt(data.last());
+            return;
+        }
+        out.writeByte(flags);
+        if ((flags & SINGLE) != 0) {
+            out.writeInt(value);
+            return;
+        }
+        out.writeBoolean(data != null);
+        if (data != null) {
+            PostingList keys = data.getKeys();
+            data.writeTo(out);
+            out.writeBoolean(keys != null);
+            if (keys != null) {
+                keys.writeTo(out);
+            }
+        }
+    }
+
+    /**
+     * Reads a payload that was written using {@link #writePayloadTo(DataOutput)}
+     */
+    void readPayloadFrom(DataInput in) throws IOException {
+        flags = in.readByte();
+        if ((flags & SINGLE) != 0) {
+            value = in.readInt();
+        } else if (in.readBoolean()) {
+            data = PostingList.readFrom(in);
+            if (in.readBoolean()) {
+                data.setKeys(PostingList.readFrom(in));
+            }
+        }
+    }
+
+    /**
+     * Restores the state of a node from a snapshot, bypassing the bookkeeping done
+     * while building the tree. The payload is read separately.
+     *
+     * @see TreeSnapshot
+     * @see Node#readPayloadFrom(DataInput)
+     */
+    void restore(Node suffix, int resultCount, int maxIndex, float maxWeight) {
+        setSuffix(suffix);
+        this.resultCount = resultCount;
+        this.maxIndex = maxIndex;
+        this.maxWeight = maxWeight;
+    }
+
+    /**
+     * Adds an edge as when restoring a snapshot or merging trees: unlike
+     * {@link #addEdge(int, Edge)}, result counts are not updated, as they are
+     * restored or merged as well.
+     */
+    void putEdge(Edge e) {
+        edges.put(e.codePointAt(0), e);
+        e.getDest().parent = this;
+    }
+
+    /**
+     * Adds the result count of <tt>other</tt>, whose subtree holds indexes disjoint
+     * from the ones of this subtree, to the count of this node, along with its weight bound.
+     */
+    void mergeCount(Node other) {
+        if (resultCount == 0) {
+            maxIndex = other.maxIndex;
+        } else if (other.resultCount > 0) {
+            maxIndex = Math.max(maxIndex, other.maxIndex);
+        }
+        resultCount += other.resultCount;
+        maxWeight = Math.max(maxWeight, other.maxWeight);
+    }
+
+    /**
+     * Adds the indexes in the payload of <tt>other</tt> to the payload of this node,
+     * along with the keys ending in it.
+     */
+    void mergePayload(Node other) {
+        if (payloadSize() == 0) {
+            data = other.data;
+            value = other.value;
+            flags = other.flags;
+            return;
+        }
+        var reader = new PostingList.Reader();
+        other.readPayload(reader);
+        while (reader.hasNext()) {
+            int index = reader.nextInt();
+            if (!contains(index)) {
+                insertIndex(index);
+            }
+        }
+        other.readKeys(reader);
+        while (reader.hasNext()) {
+            addKey(reader.nextInt());
+        }
+        other.readOwners(reader);
+        while (reader.hasNext()) {
+            addOwner(reader.nextInt());
+        }
+    }
+
+    int getMaxIndex() {
+        return maxIndex;
+    }
+
+    float getMaxWeight() {
+        return maxWeight;
+    }
+
     Node getSuffix() {
         return suffix;
     }
@@ -267,38 +610,70 @@ class Node {
         this.suffix = suffix;
     }
 
-    private void addIndex(int index) {
-        if (lastIdx == data.length) {
-            var copy = new int[data.length + increment(data.length)];
-            System.arraycopy(data, 0, copy, 0, data.length);
-            data = copy;
+    Node getParent() {
+        return parent;
+    }
+
+    private void addIndex(int index, Set<Node> counted) {
+        insertIndex(index);
+        countIndex(index, counted);
+    }
+
+    /**
+     * Adds <tt>index</tt>, which it does not hold yet, to the payload of this node,
+     * allocating a list once it holds two indexes.
+     */
+    private void insertIndex(int index) {
+        if (data != null) {
+            data.insert(index);
+        } else if ((flags & SINGLE) == 0) {
+            value = index;
+            flags = SINGLE;
+        } else {
+            allocate();
+            data.insert(index);
         }
-        data[lastIdx++] = index;
     }
 
     /**
-     * How much should we increase the size of the payload array by, given its current length?
-     * <p>
-     *     In very large trees with lots of entries (hundreds of thousands+), construction time
-     *     is dominated by allocations and array copying and GC work cleaning up all these temporary
-     *     objects.
-     * </p>
-     * <p>
-     *     We use geometric expansion (doubling the size) instead of arithmetic expansion.
-     *     This ensures that the amortized cost of inserting an element is O(1), leading to O(N)
-     *     total construction time for N elements. Arithmetic expansion would lead to O(N^2).
-     * </p>
-     * <p>
-     *     To recover unused space, the {@link #compact} method can be called to once construction
-     *     is complete.
-     * </p>
-     * @param currentLength
-     * @return
+     * Raises the weight bound of this node and of its ancestors to <tt>weight</tt>,
+     * stopping at the first one whose bound is already as large.
+     */
+    private void raiseWeight(float weight) {
+        for (Node n = this; n != null && n.maxWeight < weight; n = n.parent) {
+            n.maxWeight = weight;
+        }
+    }
+
+    /**
+     * Updates the result count of this node and of its ancestors, after <tt>index</tt>
+     * has been added to the subtree.
+     *
+     * The walk up the tree increments the count of the nodes that did not contain
+     * <tt>index</tt> yet, and stops at the first one that did, as all of its ancestors
+     * contain it as well. Whether a node contains it is told by its largest index: a
+     * smaller one means it does not, an equal one that it does. A larger one can only be
+     * found when <tt>index</tt> is inserted out of order, in which case the caller tracks
+     * the nodes containing it in <tt>counted</tt>.
+     */
+    private void countIndex(int index, Set<Node> counted) {
+        for (Node n = this; n != null && !n.contains(index, counted); n = n.parent) {
+            n.maxIndex = n.resultCount == 0 ? index : Math.max(n.maxIndex, index);
+            n.resultCount++;
+            if (counted != null) {
+                counted.add(n);
+            }
+        }
+    }
+
+    /**
+     * Tests whether the subtree of this node contains the given index
+     * @see Node#countIndex(int, Set)
      */
-    private int increment(int currentLength) {
-        if (currentLength == 0) {
-            return START_SIZE > 0 ? START_SIZE : INCREMENT;
+    private boolean contains(int index, Set<Node> counted) {
+        if (resultCount == 0 || maxIndex < index) {
+            return false;
         }
-        return currentLength; // Double the size (geometric expansion) for O(N) amortized time
+        return maxIndex == index || (counted != null && counted.contains(this));
     }
 }
@@ -0,0 +1,96 @@
+/**
+ * Copyright 2012 Alessandro Bahgat Shehata
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.abahgat.suffixtree;
+
+import java.util.Arrays;
+
+/**
+ * The occurrences of a word within the keys of a {@link GeneralizedSuffixTree}, each
+ * made of an index, the key of that index the word occurs in and the offset where the
+ * word starts in the key.
+ *
+ * Indexes and offsets are stored in a single array of native ints, and keys in a
+ * parallel array, rather than as an object each.
+ * @see GeneralizedSuffixTree#searchOccurrences(String, int)
+ */
+public final class Occurrences {
+    /**
+     * The index and the offset of each occurrence, one after the other
+     */
+    private int[] pairs = new int[16];
+    /**
+     * The key of each occurrence
+     */
+    private String[] keys = new String[8];
+    private int size = 0;
+
+    Occurrences() {
+    }
+
+    void add(int index, String key, int offset) {
+        if (size == keys.length) {
+            pairs = Arrays.copyOf(pairs, 4 * size);
+            keys = Arrays.copyOf(keys, 2 * size);
+        }
+        pairs[2 * size] = index;
+        pairs[2 * size + 1] = offset;
+        keys[size] = key;
+        size++;
+    }
+
+    /**
+     * Returns the number of occurrences
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the index of the key the given occurrence was found in
+     *
+     * @param i the position of the occurrence, from 0 to size() - 1
+     */
+    public int index(int i) {
+        return pairs[2 * checkPosition(i)];
+    }
+
+    /**
+     * Returns the key the given occurrence was found in, one of the keys its index was
+     * added with
+     *
+     * @param i the position of the occurrence, from 0 to size() - 1
+     */
+    public String key(int i) {
+        return keys[checkPosition(i)];
+    }
+
+    /**
+     * Returns the offset, in chars, where the word starts within the key of the given
+     * occurrence, as <tt>String.indexOf</tt> would return it
+     *
+     * @param i the position of the occurrence, from 0 to size() - 1
+     */
+    public int offset(int i) {
+        return pairs[2 * checkPosition(i) + 1];
+    }
+
+    private int checkPosition(int i) {
+        if (i < 0 || i >= size) {
+            throw new IndexOutOfBoundsException("Occurrence " + i + " out of " + size);
+        }
+        return i;
+    }
+}
@@ -0,0 +1,581 @@
+/**
+ * Copyright 2012 Alessandro Bahgat Shehata
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.abahgat.suffixtree;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+
+/**
+ * A compressed, sorted list of indexes, used as the payload of a {@link Node} holding
+ * more than one index.
+ *
+ * Values are stored as the differences (gaps) between consecutive values, each
+ * encoded as a variable-length integer using 7 bits per byte. Dense and increasing
+ * indexes, as the ones produced by inserting keys in order, mostly take a single
+ * byte each instead of the four bytes of an int.
+ *
+ * A list holding a single value, as most lists of keys ending in a node do, does not
+ * allocate any array at all.
+ *
+ * Since gaps can only be decoded sequentially, a skip entry is recorded every
+ * {@link #SKIP_INTERVAL} values, so that membership tests only need to decode a
+ * single block after a binary search over the skip entries.
+ */
+class PostingList {
+    /**
+     * The number of values between two consecutive skip entries
+     */
+    private static final int SKIP_INTERVAL = 64;
+    /**
+     * The bytes encoding the values, null while the list holds a single value
+     */
+    private byte[] bytes;
+    /**
+     * The number of bytes used in the bytes array
+     */
+    private int length = 0;
+    /**
+     * The number of values in the list
+     */
+    private int size;
+    /**
+     * The last (and largest) value in the list
+     */
+    private int last;
+    /**
+     * Pairs of (value, offset) entries: for each block of {@link #SKIP_INTERVAL} values
+     * but the first one, the value preceding the block and the offset in bytes at which
+     * the block starts. Null until the list spans more than one block.
+     */
+    private int[] skips;
+    /**
+     * For the payload of a {@link Node}, the values that are the indexes of the keys
+     * ending in the node. Null as long as there are none, which is the case for most nodes.
+     */
+    private PostingList keys;
+    /**
+     * For the payload of a {@link Node}, the ids of the keys whose suffixes end in the
+     * node, among the keys of indexes with several keys. Null as long as there are none.
+     * @see KeyTable#keyIdAt(int, int)
+     */
+    private PostingList owners;
+
+    /**
+     * Creates a new list containing only <tt>value</tt>
+     */
+    PostingList(int value) {
+        size = 1;
+        last = value;
+    }
+
+    int size() {
+        return size;
+    }
+
+    int last() {
+        return last;
+    }
+
+    PostingList getKeys() {
+        return keys;
+    }
+
+    void setKeys(PostingList keys) {
+        this.keys = keys;
+    }
+
+    PostingList getOwners() {
+        return owners;
+    }
+
+    void setOwners(PostingList owners) {
+        this.owners = owners;
+    }
+
+    /**
+     * Appends <tt>value</tt> to the list.
+     *
+     * @param value the value to append, must be greater than any value in the list
+     */
+    void append(int value) {
+        assert value > last;
+        if (bytes == null) {
+            bytes = new byte[8];
+            length = writeVarint(last, 0);
+        }
+        push(value);
+    }
+
+    /**
+     * Inserts <tt>value</tt> in the list, keeping it sorted.
+     *
+     * Values greater than the last one are appended. Other values are spliced into the
+     * encoded gaps, as described in {@link #splice(int, boolean)}, so that the cost of
+     * inserting them does not depend on how many values follow.
+     *
+     * @param value the value to insert, must not be in the list already
+     */
+    void insert(int value) {
+        assert !contains(value);
+        if (value > last) {
+            append(value);
+            return;
+        }
+        if (bytes == null) {
+            int previous = last;
+            bytes = new byte[8];
+            size = 0;
+            push(value);
+            push(previous);
+            return;
+        }
+        splice(value, true);
+    }
+
+    /**
+     * Removes <tt>value</tt> from the list, splicing it out of the encoded gaps as
+     * described in {@link #splice(int, boolean)}.
+     *
+     * A list left with a single value goes back to not allocating any array, and one
+     * left with much less than its capacity is trimmed.
+     *
+     * @param value the value to remove, must be in the list and must not be its only value
+     */
+    void remove(int value) {
+        assert size > 1 && contains(value);
+        splice(value, false);
+
+        if (size == 1) {
+            bytes = null;
+            skips = null;
+            length = 0;
+        } else if (4 * length < bytes.length) {
+            compact();
+        }
+    }
+
+    /**
+     * Inserts or removes <tt>value</tt>, which must not be the last value of the list
+     * when inserting it.
+     *
+     * The gaps are encoded one after the other: inserting a value splits the gap of the
+     * following value in two, and removing one merges its gap with the one of the
+     * following value, while the other gaps are only moved. The boundaries of the blocks
+     * after <tt>value</tt> move by one value, so their skip entries are updated by
+     * decoding the single gap they move past, before the bytes are moved.
+     */
+    private void splice(int value, boolean insert) {
+        // find the first value not smaller than value, starting from the block holding it
+        int block = findBlock(value);
+        if (block >= 0 && skips[2 * block] == value) {
+            // the value preceding a block is the last one of the previous block
+            block--;
+        }
+        int position = 0;
+        int previous = 0;
+        int start = 0;
+        if (block >= 0) {
+            position = (block + 1) * SKIP_INTERVAL;
+            previous = skips[2 * block];
+            start = skips[2 * block + 1];
+        }
+        int current = previous + readGap(start);
+        while (current < value) {
+            previous = current;
+            position++;
+            start = skipGap(start);
+            current += readGap(start);
+        }
+        int end = skipGap(start);
+
+        // the gaps replacing the bytes from start to end
+        int first;
+        int second = 0;
+        int count = 1;
+        if (insert) {
+            first = value - previous;
+            second = current - value;
+            count = 2;
+        } else if (position == size - 1) {
+            first = 0;
+            count = 0;
+        } else {
+            int next = current + readGap(end);
+            end = skipGap(end);
+            first = next - previous;
+        }
+        int written = (count > 0 ? varintLength(first) : 0) + (count > 1 ? varintLength(second) : 0);
+        int delta = written - (end - start);
+
+        int newSize = insert ? size + 1 : size - 1;
+        int blocks = Math.min((size - 1) / SKIP_INTERVAL, (newSize - 1) / SKIP_INTERVAL);
+        for (int j = 0; j < blocks; j++) {
+            int boundary = (j + 1) * SKIP_INTERVAL;
+            int offset = skips[2 * j + 1];
+            if (boundary <= position) {
+                continue;
+            } else if (!insert) {
+                // the first value of the block becomes the last one of the previous block
+                skips[2 * j] += readGap(offset);
+                skips[2 * j + 1] = skipGap(offset) + delta;
+            } else if (boundary == position + 1) {
+                // the inserted value becomes the last one of the previous block
+                skips[2 * j] = value;
+                skips[2 * j + 1] = start + varintLength(first);
+            } else {
+                // the last value of the previous block becomes the first one of the block
+                int moved = gapBefore(offset);
+                skips[2 * j] -= readGap(moved);
+                skips[2 * j + 1] = moved + delta;
+            }
+        }
+
+        if (length + delta > bytes.length) {
+            var copy = new byte[Math.max(2 * bytes.length, length + delta)];
+            System.arraycopy(bytes, 0, copy, 0, length);
+            bytes = copy;
+        }
+        System.arraycopy(bytes, end, bytes, end + delta, length - end);
+        length += delta;
+        int offset = start;
+        if (count > 0) {
+            offset = writeVarint(first, offset);
+        }
+        if (count > 1) {
+            writeVarint(second, offset);
+        }
+
+        if (!insert && position == size - 1) {
+            last = previous;
+        }
+        if (newSize > 1 && (newSize - 1) / SKIP_INTERVAL > (size - 1) / SKIP_INTERVAL) {
+            // the last value starts a new block
+            int lastGap = gapBefore(length);
+            addSkip(last - readGap(lastGap), lastGap);
+        }
+        size = newSize;
+    }
+
+    /**
+     * Adds all the values of <tt>other</tt> which are not in the list yet.
+     *
+     * Merging a list whose values all follow the ones of this list only appends them.
+     */
+    void addAll(PostingList other) {
+        var it = other.iterator();
+        while (it.hasNext()) {
+            int value = it.nextInt();
+            if (!contains(value)) {
+                insert(value);
+            }
+        }
+    }
+
+    /**
+     * Tests whether the list contains the given value.
+     *
+     * Appending values in increasing order only ever tests the last value, which takes
+     * constant time. Other values take a binary search over the skip entries and the
+     * decoding of a single block.
+     *
+     * @param value the value to look for
+     * @return true if <tt>this</tt> contains value
+     */
+    boolean contains(int value) {
+        if (value >= last) {
+            return value == last;
+        }
+        if (bytes == null) {
+            return false;
+        }
+
+        int current = 0;
+        int offset = 0;
+        int remaining = Math.min(size, SKIP_INTERVAL);
+        int block = findBlock(value);
+        if (block >= 0) {
+            current = skips[2 * block];
+            if (current == value) {
+                return true;
+            }
+            offset = skips[2 * block + 1];
+            remaining = SKIP_INTERVAL;
+        }
+
+        for (int i = 0; i < remaining && offset < length; i++) {
+            int gap = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = bytes[offset++];
+                gap |= (b & 0x7F) << shift;
+                shift += 7;
+            } while (b < 0);
+            current += gap;
+            if (current >= value) {
+                return current == value;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Trims the internal arrays to the minimum size needed to store the current contents.
+     */
+    void compact() {
+        if (bytes != null && length < bytes.length) {
+            var copy = new byte[length];
+            System.arraycopy(bytes, 0, copy, 0, length);
+            bytes = copy;
+        }
+        int skipLength = 2 * ((size - 1) / SKIP_INTERVAL);
+        if (skips != null && skipLength < skips.length) {
+            var copy = new int[skipLength];
+            System.arraycopy(skips, 0, copy, 0, skipLength);
+            skips = copy;
+        }
+    }
+
+    /**
+     * Writes the list to <tt>out</tt>, in its encoded form.
+     *
+     * @see PostingList#readFrom(DataInput)
+     */
+    void writeTo(DataOutput out) throws IOException {
+        out.writeInt(size);
+        out.writeInt(last);
+        if (size > 1) {
+            out.writeInt(length);
+            out.write(bytes, 0, length);
+            int skipLength = 2 * ((size - 1) / SKIP_INTERVAL);
+            for (int i = 0; i < skipLength; i++) {
+                out.writeInt(skips[i]);
+            }
+        }
+    }
+
+    /**
+     * Reads a list that was written using {@link #writeTo(DataOutput)}, without
+     * decoding its values.
+     */
+    static PostingList readFrom(DataInput in) throws IOException {
+        int size = in.readInt();
+        var list = new PostingList(in.readInt());
+        list.size = size;
+        if (size > 1) {
+            list.length = in.readInt();
+            list.bytes = new byte[list.length];
+            in.readFully(list.bytes);
+            int skipLength = 2 * ((size - 1) / SKIP_INTERVAL);
+            if (skipLength > 0) {
+                list.skips = new int[skipLength];
+                for (int i = 0; i < skipLength; i++) {
+                    list.skips[i] = in.readInt();
+                }
+            }
+        }
+        return list;
+    }
+
+    /**
+     * Returns an iterator over the values in the list, in increasing order
+     */
+    PrimitiveIterator.OfInt iterator() {
+        var reader = new Reader();
+        reader.reset(this);
+        return reader;
+    }
+
+    /**
+     * Returns the last block whose preceding value is not greater than <tt>value</tt>,
+     * i.e. the position of the skip entry where the search for value should start,
+     * or -1 if it should start from the beginning of the list.
+     */
+    private int findBlock(int value) {
+        if (skips == null) {
+            return -1;
+        }
+        int low = 0;
+        int high = (size - 1) / SKIP_INTERVAL - 1;
+        int found = -1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (skips[2 * mid] <= value) {
+                found = mid;
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Encodes <tt>value</tt> at the end of the list, recording a skip entry if it
+     * starts a new block.
+     */
+    private void push(int value) {
+        if (size > 0 && size % SKIP_INTERVAL == 0) {
+            addSkip(last, length);
+        }
+        if (length + 5 > bytes.length) {
+            var copy = new byte[Math.max(2 * bytes.length, length + 5)];
+            System.arraycopy(bytes, 0, copy, 0, length);
+            bytes = copy;
+        }
+        length = writeVarint(size == 0 ? value : value - last, length);
+        last = value;
+        size++;
+    }
+
+    private void addSkip(int value, int offset) {
+        int count = size / SKIP_INTERVAL - 1;
+        if (skips == null) {
+            skips = new int[4];
+        } else if (2 * count >= skips.length) {
+            var copy = new int[Math.max(4, 2 * skips.length)];
+            System.arraycopy(skips, 0, copy, 0, skips.length);
+            skips = copy;
+        }
+        skips[2 * count] = value;
+        skips[2 * count + 1] = offset;
+    }
+
+    private int writeVarint(int value, int offset) {
+        while ((value & ~0x7F) != 0) {
+            bytes[offset++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        bytes[offset++] = (byte) value;
+        return offset;
+    }
+
+    /**
+     * Decodes the gap encoded at the given offset
+     */
+    private int readGap(int offset) {
+        int gap = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = bytes[offset++];
+            gap |= (b & 0x7F) << shift;
+            shift += 7;
+        } while (b < 0);
+        return gap;
+    }
+
+    /**
+     * Returns the offset following the gap encoded at the given offset
+     */
+    private int skipGap(int offset) {
+        while (bytes[offset++] < 0) {
+            // continuation byte
+        }
+        return offset;
+    }
+
+    /**
+     * Returns the offset of the gap encoded just before the given offset. Only the last
+     * byte of each gap has its high bit clear, so gaps can be found going backwards too.
+     */
+    private int gapBefore(int offset) {
+        offset--;
+        while (offset > 0 && bytes[offset - 1] < 0) {
+            offset--;
+        }
+        return offset;
+    }
+
+    private static int varintLength(int value) {
+        int length = 1;
+        while ((value & ~0x7F) != 0) {
+            value >>>= 7;
+            length++;
+        }
+        return length;
+    }
+
+    /**
+     * A reusable iterator over the values of a list.
+     *
+     * A single reader can visit any number of lists, one after the other, by means of
+     * {@link #reset(PostingList)}, so that no allocation is needed for each list.
+     */
+    static class Reader implements PrimitiveIterator.OfInt {
+        private PostingList list;
+        private int size;
+        private int position;
+        private int offset;
+        private int current;
+
+        /**
+         * Starts reading the given list from its first value.
+         *
+         * @param list the list to read, null is handled as an empty list
+         */
+        void reset(PostingList list) {
+            this.list = list;
+            this.size = list == null ? 0 : list.size;
+            this.position = 0;
+            this.offset = 0;
+            this.current = 0;
+        }
+
+        /**
+         * Starts reading a list made of <tt>value</tt> only, as the payload a node
+         * stores without allocating a list.
+         */
+        void reset(int value) {
+            this.list = null;
+            this.size = 1;
+            this.position = 0;
+            this.current = value;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return position < size;
+        }
+
+        @Override
+        public int nextInt() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            position++;
+            if (list == null) {
+                return current;
+            }
+            if (list.bytes == null) {
+                return list.last;
+            }
+            int gap = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = list.bytes[offset++];
+                gap |= (b & 0x7F) << shift;
+                shift += 7;
+            } while (b < 0);
+            current += gap;
+            return current;
+        }
+    }
+}
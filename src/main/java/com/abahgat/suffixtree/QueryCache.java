@@ -0,0 +1,148 @@
+/**
+ * Copyright 2012 Alessandro Bahgat Shehata
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.abahgat.suffixtree;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A cache of search results, evicting the least recently used entries once their
+ * total weight exceeds a bound.
+ *
+ * Entries are keyed by the word searched and the max number of results requested,
+ * and weigh one plus the number of indexes they hold, so that the bound limits the
+ * memory taken by the cache regardless of how many results each search returns.
+ * Searches that do not match any key are cached as well.
+ *
+ * Like the tree it belongs to, the cache is not thread-safe.
+ * @see GeneralizedSuffixTree#enableCache(long)
+ */
+class QueryCache {
+    /**
+     * The key of an entry: the word searched and the max number of results, -1 for all
+     */
+    private record Key(String word, int limit) {
+    }
+
+    /**
+     * The cached results, from the least to the most recently used
+     */
+    private final LinkedHashMap<Key, int[]> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final long maxWeight;
+    private long weight = 0;
+    private long hits = 0;
+    private long misses = 0;
+    private long evictions = 0;
+    private long invalidations = 0;
+
+    /**
+     * Creates an empty cache.
+     *
+     * @param maxWeight the max total weight of the entries
+     */
+    QueryCache(long maxWeight) {
+        if (maxWeight <= 0) {
+            throw new IllegalArgumentException("The max weight of the cache must be positive, got " + maxWeight);
+        }
+        this.maxWeight = maxWeight;
+    }
+
+    /**
+     * Returns the cached results for the given search, or null if there are none.
+     * The returned array must not be modified.
+     */
+    int[] get(String word, int limit) {
+        int[] found = entries.get(new Key(word, normalize(limit)));
+        if (found == null) {
+            misses++;
+        } else {
+            hits++;
+        }
+        return found;
+    }
+
+    /**
+     * Caches the results of the given search, evicting the least recently used entries
+     * as needed. The cache takes ownership of <tt>found</tt>.
+     */
+    void put(String word, int limit, int[] found) {
+        long w = weightOf(found);
+        if (w > maxWeight) {
+            return;
+        }
+        int[] previous = entries.put(new Key(word, normalize(limit)), found);
+        if (previous != null) {
+            weight -= weightOf(previous);
+        }
+        weight += w;
+        Iterator<int[]> lru = entries.values().iterator();
+        while (weight > maxWeight) {
+            weight -= weightOf(lru.next());
+            lru.remove();
+            evictions++;
+        }
+    }
+
+    /**
+     * Drops the results of the searches for substrings of <tt>key</tt>, after it was
+     * added to the tree: the results of any other search are unchanged.
+     */
+    void invalidateKey(String key) {
+        Iterator<Map.Entry<Key, int[]>> it = entries.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<Key, int[]> entry = it.next();
+            if (key.contains(entry.getKey().word())) {
+                drop(it, entry.getValue());
+            }
+        }
+    }
+
+    /**
+     * Drops the results holding <tt>index</tt>, after it was removed from the tree:
+     * the other results are still made of indexes in the tree.
+     */
+    void invalidateIndex(int index) {
+        Iterator<int[]> it = entries.values().iterator();
+        while (it.hasNext()) {
+            int[] found = it.next();
+            for (int value : found) {
+                if (value == index) {
+                    drop(it, found);
+                    break;
+                }
+            }
+        }
+    }
+
+    GeneralizedSuffixTree.CacheStats stats() {
+        return new GeneralizedSuffixTree.CacheStats(hits, misses, evictions, invalidations, entries.size(), weight);
+    }
+
+    private void drop(Iterator<?> it, int[] found) {
+        it.remove();
+        weight -= weightOf(found);
+        invalidations++;
+    }
+
+    private static int normalize(int limit) {
+        return limit < 0 ? -1 : limit;
+    }
+
+    private static long weightOf(int[] found) {
+        return 1L + found.length;
+    }
+}
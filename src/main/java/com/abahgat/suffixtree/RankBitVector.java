@@ -0,0 +1,117 @@
+/**
+ * Copyright 2012 Alessandro Bahgat Shehata
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.abahgat.suffixtree;
+
+/**
+ * A bit vector answering rank queries in constant time, and select queries in
+ * logarithmic time.
+ *
+ * Besides the bits, it stores the number of 1 bits before each block of 512 bits,
+ * an overhead of 1/16: ranks within a block are computed with at most 8 popcounts,
+ * and selects binary search the blocks before scanning one of them.
+ */
+class RankBitVector {
+    private static final int WORDS_PER_BLOCK = 8;
+    private static final int BITS_PER_BLOCK = 64 * WORDS_PER_BLOCK;
+
+    private final long[] words;
+    private final int[] blockRanks;
+    private final int size;
+
+    RankBitVector(int size) {
+        this.size = size;
+        this.words = new long[(size + 63) >>> 6];
+        this.blockRanks = new int[words.length / WORDS_PER_BLOCK + 1];
+    }
+
+    void set(int i) {
+        words[i >>> 6] |= 1L << i;
+    }
+
+    /**
+     * Computes the block ranks, after all the bits have been set
+     */
+    void seal() {
+        int count = 0;
+        for (int w = 0; w < words.length; w++) {
+            if (w % WORDS_PER_BLOCK == 0) {
+                blockRanks[w / WORDS_PER_BLOCK] = count;
+            }
+            count += Long.bitCount(words[w]);
+        }
+        if (words.length % WORDS_PER_BLOCK == 0) {
+            blockRanks[blockRanks.length - 1] = count;
+        }
+    }
+
+    int size() {
+        return size;
+    }
+
+    boolean get(int i) {
+        return (words[i >>> 6] >>> i & 1) != 0;
+    }
+
+    /**
+     * Returns the number of 1 bits in positions 0 .. i - 1
+     */
+    int rank1(int i) {
+        int word = i >>> 6;
+        int rank = blockRanks[word / WORDS_PER_BLOCK];
+        for (int w = word - word % WORDS_PER_BLOCK; w < word; w++) {
+            rank += Long.bitCount(words[w]);
+        }
+        if ((i & 63) != 0) {
+            rank += Long.bitCount(words[word] & (-1L >>> (64 - (i & 63))));
+        }
+        return rank;
+    }
+
+    /**
+     * Returns the number of 0 bits in positions 0 .. i - 1
+     */
+    int rank0(int i) {
+        return i - rank1(i);
+    }
+
+    /**
+     * Returns the position of the 0 bit preceded by <tt>k</tt> other 0 bits, which must exist
+     */
+    int select0(int k) {
+        // the last block starting with at most k zeros
+        int lo = 0;
+        int hi = blockRanks.length - 1;
+        while (lo < hi) {
+            int mid = (lo + hi + 1) >>> 1;
+            if (mid * BITS_PER_BLOCK - blockRanks[mid] <= k) {
+                lo = mid;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        k -= lo * BITS_PER_BLOCK - blockRanks[lo];
+        int w = lo * WORDS_PER_BLOCK;
+        long zeros = ~words[w];
+        while (Long.bitCount(zeros) <= k) {
+            k -= Long.bitCount(zeros);
+            zeros = ~words[++w];
+        }
+        for (; k > 0; k--) {
+            zeros &= zeros - 1;
+        }
+        return (w << 6) + Long.numberOfTrailingZeros(zeros);
+    }
+}
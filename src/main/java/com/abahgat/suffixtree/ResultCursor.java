@@ -0,0 +1,197 @@
+/**
+ * Copyright 2012 Alessandro Bahgat Shehata
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.abahgat.suffixtree;
+
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+
+/**
+ * A lazy, depth-first iterator over the indexes stored in a subtree.
+ *
+ * Nodes are visited only when more results are requested, so that retrieving
+ * the first <tt>n</tt> results of a large subtree costs roughly O(n) instead of
+ * O(subtree size). Each index is returned only once.
+ *
+ * The tree must not be modified while a cursor is in use.
+ */
+class ResultCursor implements PrimitiveIterator.OfInt {
+    /**
+     * The indexes returned so far, sized from the limit when there is a small one
+     */
+    private final IntSet seen;
+    /**
+     * The max number of results to return, -1 for all
+     */
+    private final int limit;
+    /**
+     * Whether to return only the indexes of the keys ending in the nodes visited, rather
+     * than all the indexes in their payloads
+     */
+    private final boolean keysOnly;
+    /**
+     * The path from the subtree root to the node being visited, used as a
+     * stack in place of recursion. Allocated only if the root has children.
+     */
+    private Node[] path;
+    /**
+     * For each node in the path, the position of the next edge to follow
+     */
+    private int[] nextEdge;
+    private int depth = 0;
+    private static final int PATH_SIZE = 16;
+    /**
+     * The largest limit the set of returned indexes is sized from: larger limits are
+     * rarely reached, so the set starts small and grows as needed
+     */
+    private static final int MAX_PRESIZED_LIMIT = 64;
+    /**
+     * The node whose payload is being read
+     */
+    private Node current;
+    /**
+     * The reader of the payload of the current node, reused for every node
+     */
+    private final PostingList.Reader reader = new PostingList.Reader();
+    private int next;
+    private boolean ready = false;
+
+    /**
+     * Creates a cursor over the indexes of <tt>root</tt> and its descendants.
+     *
+     * @param root the root of the subtree to visit
+     * @param limit the max number of results to return. Use -1 to get all
+     */
+    ResultCursor(Node root, int limit) {
+        this(root, limit, false);
+    }
+
+    /**
+     * Creates a cursor over the indexes of <tt>root</tt> and its descendants.
+     *
+     * @param root the root of the subtree to visit
+     * @param limit the max number of results to return. Use -1 to get all
+     * @param keysOnly whether to return only the indexes of the keys ending in the subtree,
+     *                 i.e. of the keys starting with the string denoted by <tt>root</tt>
+     */
+    ResultCursor(Node root, int limit, boolean keysOnly) {
+        this.limit = limit;
+        this.keysOnly = keysOnly;
+        this.seen = limit >= 0 && limit <= MAX_PRESIZED_LIMIT ? new IntSet(limit) : new IntSet();
+        this.current = root;
+        read(root);
+        if (root.edgeCount() > 0) {
+            push(root);
+        }
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (!ready) {
+            ready = advance();
+        }
+        return ready;
+    }
+
+    @Override
+    public int nextInt() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        ready = false;
+        return next;
+    }
+
+    /**
+     * Consumes the whole cursor, returning all the results it yields.
+     *
+     * @return the set of indexes found, in the order they were found
+     */
+    IntSet drain() {
+        while (hasNext()) {
+            nextInt();
+        }
+        return seen;
+    }
+
+    /**
+     * Looks for the next index that has not been returned yet.
+     *
+     * @return false if there are no more results
+     */
+    private boolean advance() {
+        if (seen.size() == limit) {
+            return false;
+        }
+        while (current != null) {
+            while (reader.hasNext()) {
+                int candidate = reader.nextInt();
+                if (seen.add(candidate)) {
+                    next = candidate;
+                    return true;
+                }
+            }
+            current = nextNode();
+            if (current != null) {
+                read(current);
+            }
+        }
+        return false;
+    }
+
+    private void read(Node node) {
+        if (keysOnly) {
+            node.readKeys(reader);
+        } else {
+            node.readPayload(reader);
+        }
+    }
+
+    /**
+     * Returns the next node in depth-first order, or null if the whole subtree has been visited.
+     */
+    private Node nextNode() {
+        while (depth > 0) {
+            Node top = path[depth - 1];
+            int position = nextEdge[depth - 1];
+            if (position < top.edgeCount()) {
+                nextEdge[depth - 1]++;
+                Node child = top.edgeAt(position).getDest();
+                push(child);
+                return child;
+            }
+            depth--;
+            path[depth] = null;
+        }
+        return null;
+    }
+
+    private void push(Node node) {
+        if (path == null) {
+            path = new Node[PATH_SIZE];
+            nextEdge = new int[PATH_SIZE];
+        } else if (depth == path.length) {
+            var pathCopy = new Node[path.length * 2];
+            System.arraycopy(path, 0, pathCopy, 0, depth);
+            path = pathCopy;
+            var edgeCopy = new int[nextEdge.length * 2];
+            System.arraycopy(nextEdge, 0, edgeCopy, 0, depth);
+            nextEdge = edgeCopy;
+        }
+        path[depth] = node;
+        nextEdge[depth] = 0;
+        depth++;
+    }
+}
@@ -0,0 +1,322 @@
+/**
+ * Copyright 2012 Alessandro Bahgat Shehata
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.abahgat.suffixtree;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.function.IntConsumer;
+
+/**
+ * A thread-safe index accepting concurrent puts from many threads, as well as
+ * concurrent searches.
+ *
+ * Indexes are spread over a number of shards, each of them a {@link ConcurrentSuffixTree}
+ * guarded by its own writer lock: puts of indexes stored in different shards run in
+ * parallel, and searches never block.
+ *
+ * Since each index is always stored in the same shard, the results of different shards
+ * are disjoint: searches concatenate them, and result counts are added up.
+ * A search sees each shard as it was after a whole put, but may see the effects of
+ * concurrent puts on some shards and not on others.
+ */
+public class ShardedSuffixTree implements SuffixIndex {
+    /**
+     * The shards the indexes are spread over
+     */
+    private final ConcurrentSuffixTree[] shards;
+
+    /**
+     * Creates an empty index with one shard for each available processor
+     */
+    public ShardedSuffixTree() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Creates an empty index with the given number of shards.
+     *
+     * @param shards the number of shards, bounding the number of puts that can run in parallel
+     */
+    public ShardedSuffixTree(int shards) {
+        if (shards < 1) {
+            throw new IllegalArgumentException("The number of shards must be positive, got " + shards);
+        }
+        this.shards = new ConcurrentSuffixTree[shards];
+        for (int i = 0; i < shards; i++) {
+            this.shards[i] = new ConcurrentSuffixTree();
+        }
+    }
+
+    /**
+     * Adds the specified <tt>index</tt> under the given <tt>key</tt>.
+     *
+     * Can be called by many threads at once. Indexes can be added in any order,
+     * although each shard is fastest when its indexes arrive roughly in order.
+     *
+     * @see GeneralizedSuffixTree#put(String, int)
+     */
+    public void put(String key, int index) {
+        shardOf(index).put(key, index);
+    }
+
+    /**
+     * Adds the specified <tt>index</tt> under the given <tt>key</tt>, with the given weight.
+     *
+     * @see GeneralizedSuffixTree#put(String, int, float)
+     */
+    public void put(String key, int index, float weight) {
+        shardOf(index).put(key, index, weight);
+    }
+
+    /**
+     * Removes the given <tt>index</tt>, from the only shard that can store it.
+     *
+     * @see GeneralizedSuffixTree#remove(int)
+     */
+    public void remove(int index) {
+        shardOf(index).remove(index);
+    }
+
+    /**
+     * @see GeneralizedSuffixTree#search(String)
+     */
+    public Collection<Integer> search(String word) {
+        return search(word, -1);
+    }
+
+    /**
+     * @see GeneralizedSuffixTree#search(String, int)
+     */
+    public Collection<Integer> search(String word, int results) {
+        var found = new IntSet();
+        search(word, results, found::add);
+        return found.toModifiableSet();
+    }
+
+    /**
+     * @see GeneralizedSuffixTree#searchInts(String)
+     */
+    public int[] searchInts(String word) {
+        return searchInts(word, -1);
+    }
+
+    /**
+     * @see GeneralizedSuffixTree#searchInts(String, int)
+     */
+    public int[] searchInts(String word, int results) {
+        List<int[]> parts = new ArrayList<>(shards.length);
+        int total = 0;
+        for (ConcurrentSuffixTree shard : shards) {
+            if (total == results) {
+                break;
+            }
+            int[] part = shard.searchInts(word, results < 0 ? -1 : results - total);
+            parts.add(part);
+            total += part.length;
+        }
+        if (parts.size() == 1) {
+            return parts.get(0);
+        }
+        int[] found = new int[total];
+        int position = 0;
+        for (int[] part : parts) {
+            System.arraycopy(part, 0, found, position, part.length);
+            position += part.length;
+        }
+        return found;
+    }
+
+    /**
+     * @see GeneralizedSuffixTree#search(String, IntConsumer)
+     */
+    public void search(String word, IntConsumer action) {
+        search(word, -1, action);
+    }
+
+    /**
+     * Searches for the given word, passing at most the given number of matches to
+     * <tt>action</tt>, one shard after the other.
+     *
+     * @see GeneralizedSuffixTree#search(String, int, IntConsumer)
+     */
+    public void search(String word, int results, IntConsumer action) {
+        var counter = new IntConsumer() {
+            int count = 0;
+
+            @Override
+            public void accept(int index) {
+                count++;
+                action.accept(index);
+            }
+        };
+        for (ConcurrentSuffixTree shard : shards) {
+            if (counter.count == results) {
+                return;
+            }
+            shard.search(word, results < 0 ? -1 : results - counter.count, counter);
+        }
+    }
+
+    /**
+     * @see GeneralizedSuffixTree#searchPrefix(String, int)
+     */
+    public Collection<Integer> searchPrefix(String word, int results) {
+        var found = new IntSet();
+        for (ConcurrentSuffixTree shard : shards) {
+            if (found.size() == results) {
+                break;
+            }
+            for (int index : shard.searchPrefix(word, results < 0 ? -1 : results - found.size())) {
+                found.add(index);
+            }
+        }
+        return found.toModifiableSet();
+    }
+
+    /**
+     * @see GeneralizedSuffixTree#searchSuffix(String, int)
+     */
+    public Collection<Integer> searchSuffix(String word, int results) {
+        var found = new IntSet();
+        for (ConcurrentSuffixTree shard : shards) {
+            if (found.size() == results) {
+                break;
+            }
+            for (int index : shard.searchSuffix(word, results < 0 ? -1 : results - found.size())) {
+                found.add(index);
+            }
+        }
+        return found.toModifiableSet();
+    }
+
+    /**
+     * Searches for the given word and returns the given number of matches with the
+     * largest weights: the heaviest matches of each shard are merged by weight.
+     *
+     * @see GeneralizedSuffixTree#searchTopK(String, int)
+     */
+    public int[] searchTopK(String word, int results) {
+        List<int[]> parts = new ArrayList<>(shards.length);
+        int total = 0;
+        for (ConcurrentSuffixTree shard : shards) {
+            int[] part = shard.searchTopK(word, results);
+            parts.add(part);
+            total += part.length;
+        }
+        var candidates = new long[total];
+        int position = 0;
+        for (int s = 0; s < shards.length; s++) {
+            for (int index : parts.get(s)) {
+                candidates[position++] = GeneralizedSuffixTree.candidate(shards[s].getWeight(index), index);
+            }
+        }
+        Arrays.sort(candidates);
+        int[] found = new int[results < 0 ? total : Math.min(results, total)];
+        for (int i = 0; i < found.length; i++) {
+            found[i] = (int) candidates[total - 1 - i];
+        }
+        return found;
+    }
+
+    /**
+     * @see GeneralizedSuffixTree#searchOccurrences(String, int)
+     */
+    public Occurrences searchOccurrences(String word, int results) {
+        var found = new Occurrences();
+        for (ConcurrentSuffixTree shard : shards) {
+            if (found.size() == results) {
+                break;
+            }
+            Occurrences part = shard.searchOccurrences(word, results < 0 ? -1 : results - found.size());
+            for (int i = 0; i < part.size(); i++) {
+                found.add(part.index(i), part.key(i), part.offset(i));
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Searches for the keys containing a string within the given edit distance of
+     * <tt>word</tt>, one shard after the other: unlike in a single tree, matches are not
+     * sorted by edit distance across shards.
+     *
+     * @see GeneralizedSuffixTree#searchApprox(String, int, int)
+     */
+    public Collection<Integer> searchApprox(String word, int maxEdits, int results) {
+        var found = new IntSet();
+        for (ConcurrentSuffixTree shard : shards) {
+            if (found.size() == results) {
+                break;
+            }
+            for (int index : shard.searchApprox(word, maxEdits, results < 0 ? -1 : results - found.size())) {
+                found.add(index);
+            }
+        }
+        return found.toModifiableSet();
+    }
+
+    /**
+     * @see GeneralizedSuffixTree#searchPattern(String, int)
+     */
+    public Collection<Integer> searchPattern(String pattern, int results) {
+        var found = new IntSet();
+        for (ConcurrentSuffixTree shard : shards) {
+            if (found.size() == results) {
+                break;
+            }
+            for (int index : shard.searchPattern(pattern, results < 0 ? -1 : results - found.size())) {
+                found.add(index);
+            }
+        }
+        return found.toModifiableSet();
+    }
+
+    /**
+     * @see GeneralizedSuffixTree#getWeight(int)
+     */
+    public float getWeight(int index) {
+        return shardOf(index).getWeight(index);
+    }
+
+    /**
+     * @see GeneralizedSuffixTree#searchWithCount(String, int)
+     */
+    public GeneralizedSuffixTree.ResultInfo searchWithCount(String word, int to) {
+        var found = new IntSet();
+        int total = 0;
+        for (ConcurrentSuffixTree shard : shards) {
+            GeneralizedSuffixTree.ResultInfo info = shard.searchWithCount(word, to < 0 ? -1 : Math.max(0, to - found.size()));
+            for (int index : info.results()) {
+                found.add(index);
+            }
+            total += info.totalResults();
+        }
+        return new GeneralizedSuffixTree.ResultInfo(found.toModifiableSet(), total);
+    }
+
+    /**
+     * @see GeneralizedSuffixTree#computeCount()
+     */
+    public int computeCount() {
+        return Arrays.stream(shards).mapToInt(ConcurrentSuffixTree::computeCount).sum();
+    }
+
+    private ConcurrentSuffixTree shardOf(int index) {
+        return shards[Math.floorMod(index, shards.length)];
+    }
+}
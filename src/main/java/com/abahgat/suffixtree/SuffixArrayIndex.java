@@ -0,0 +1,351 @@
+/**
+ * Copyright 2012 Alessandro Bahgat Shehata
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.abahgat.suffixtree;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.function.IntConsumer;
+
+/**
+ * A read-only index over a set of keys, answering the same queries as a
+ * {@link GeneralizedSuffixTree} by means of a generalized suffix array.
+ *
+ * Keys are concatenated in a single text, whose suffixes are sorted with SA-IS in
+ * linear time. The index is made of:
+ * <ul>
+ *     <li>the text itself</li>
+ *     <li>the suffix array, i.e. the positions of the suffixes of all the keys in
+ *     lexicographic order</li>
+ *     <li>the LCP array, storing the length of the longest common prefix of each suffix
+ *     and the one preceding it in the suffix array</li>
+ *     <li>the position where each key starts in the text, along with its index</li>
+ * </ul>
+ * Overall, it takes about 10 bytes for each char of the keys, instead of the several
+ * objects allocated for each char by a suffix tree.
+ *
+ * The suffixes starting with a given word are contiguous in the suffix array: the first
+ * of them is found by binary search in O(m log n) and the following ones by scanning
+ * the LCP array. Unlike in a suffix tree, the number of results is not stored but
+ * counted, in time linear in the number of occurrences of the word.
+ */
+public class SuffixArrayIndex implements SuffixIndex {
+    /**
+     * The (shared) result of searches that do not match any key
+     */
+    private static final int[] NO_RESULTS = new int[0];
+
+    /**
+     * The keys, one after the other
+     */
+    private final char[] text;
+    /**
+     * The positions in text of the suffixes of the keys, in lexicographic order
+     */
+    private final int[] suffixes;
+    /**
+     * lcp[r] is the length of the longest common prefix of the suffixes in positions
+     * r - 1 and r of the suffix array, not extending past the end of their keys
+     */
+    private final int[] lcp;
+    /**
+     * The position in text where each key starts, followed by the length of the text
+     */
+    private final int[] keyStarts;
+    /**
+     * The index of each key
+     */
+    private final int[] indexes;
+    /**
+     * The number of distinct indexes
+     */
+    private final int indexCount;
+
+    private SuffixArrayIndex(char[] text, int[] suffixes, int[] lcp, int[] keyStarts, int[] indexes) {
+        this.text = text;
+        this.suffixes = suffixes;
+        this.lcp = lcp;
+        this.keyStarts = keyStarts;
+        this.indexes = indexes;
+        // as in a suffix tree, empty keys are not stored
+        var distinct = new IntSet();
+        for (int i = 0; i < indexes.length; i++) {
+            if (keyStarts[i + 1] > keyStarts[i]) {
+                distinct.add(indexes[i]);
+            }
+        }
+        this.indexCount = distinct.size();
+    }
+
+    /**
+     * Builds an index where each key is stored with its position in <tt>keys</tt> as index.
+     *
+     * @param keys the keys to index
+     * @return the index
+     */
+    public static SuffixArrayIndex build(List<String> keys) {
+        var indexes = new int[keys.size()];
+        Arrays.setAll(indexes, i -> i);
+        return build(keys, indexes);
+    }
+
+    /**
+     * Builds an index where each key is stored with the index in the same position of
+     * <tt>indexes</tt>, as if <tt>put(keys.get(i), indexes[i])</tt> was called on a
+     * {@link GeneralizedSuffixTree} for each of them.
+     *
+     * @param keys the keys to index
+     * @param indexes the index of each key, in any order and possibly repeated
+     * @return the index
+     */
+    public static SuffixArrayIndex build(List<String> keys, int[] indexes) {
+        if (keys.size() != indexes.length) {
+            throw new IllegalArgumentException("Got " + keys.size() + " keys but " + indexes.length + " indexes");
+        }
+        int k = keys.size();
+        var keyStarts = new int[k + 1];
+        for (int i = 0; i < k; i++) {
+            keyStarts[i + 1] = keyStarts[i] + keys.get(i).length();
+        }
+        int n = keyStarts[k];
+        var text = new char[n];
+        for (int i = 0; i < k; i++) {
+            keys.get(i).getChars(0, keys.get(i).length(), text, keyStarts[i]);
+        }
+
+        // each key is followed by a separator (0), smaller than any char (c + 1), so that
+        // suffixes compare as if they ended with their keys
+        var s = new int[n + k];
+        var keyOf = new int[n];
+        for (int i = 0, p = 0; i < k; i++) {
+            for (int j = keyStarts[i]; j < keyStarts[i + 1]; j++) {
+                s[p++] = text[j] + 1;
+                keyOf[j] = i;
+            }
+            s[p++] = 0;
+        }
+        int[] sa = SuffixArrays.sais(s, Character.MAX_VALUE + 1);
+
+        // drop the suffixes starting with a separator, and map positions to the text
+        var suffixes = new int[n];
+        var separators = new boolean[n + k];
+        for (int i = 0; i < k; i++) {
+            separators[keyStarts[i + 1] + i] = true;
+        }
+        var keysBefore = new int[n + k];
+        for (int p = 0, count = 0; p < n + k; p++) {
+            keysBefore[p] = count;
+            if (separators[p]) {
+                count++;
+            }
+        }
+        for (int r = 0, position = 0; r < sa.length; r++) {
+            if (!separators[sa[r]]) {
+                suffixes[position++] = sa[r] - keysBefore[sa[r]];
+            }
+        }
+
+        return new SuffixArrayIndex(text, suffixes, lcp(text, suffixes, keyStarts, keyOf), keyStarts, indexes.clone());
+    }
+
+    /**
+     * Computes the LCP array in linear time (Kasai et al.), visiting suffixes in text order:
+     * removing the first char of a suffix decreases its longest common prefix with the
+     * preceding suffix by at most one.
+     */
+    private static int[] lcp(char[] text, int[] suffixes, int[] keyStarts, int[] keyOf) {
+        int n = suffixes.length;
+        var rank = new int[n];
+        for (int r = 0; r < n; r++) {
+            rank[suffixes[r]] = r;
+        }
+        var lcp = new int[n];
+        int h = 0;
+        for (int i = 0; i < n; i++) {
+            if (i == keyStarts[keyOf[i]]) {
+                // the bound only holds within the same key
+                h = 0;
+            }
+            if (rank[i] == 0) {
+                h = 0;
+                continue;
+            }
+            int j = suffixes[rank[i] - 1];
+            int endI = keyStarts[keyOf[i] + 1];
+            int endJ = keyStarts[keyOf[j] + 1];
+            while (i + h < endI && j + h < endJ && text[i + h] == text[j + h]) {
+                h++;
+            }
+            lcp[rank[i]] = h;
+            if (h > 0) {
+                h--;
+            }
+        }
+        return lcp;
+    }
+
+    /**
+     * @see GeneralizedSuffixTree#search(String)
+     */
+    public Collection<Integer> search(String word) {
+        return search(word, -1);
+    }
+
+    /**
+     * @see GeneralizedSuffixTree#search(String, int)
+     */
+    public Collection<Integer> search(String word, int results) {
+        int first = firstMatch(word);
+        if (first < 0) {
+            return IntSet.modifiableSet(NO_RESULTS);
+        }
+        return collect(first, word.length(), results).toModifiableSet();
+    }
+
+    /**
+     * @see GeneralizedSuffixTree#searchInts(String)
+     */
+    public int[] searchInts(String word) {
+        return searchInts(word, -1);
+    }
+
+    /**
+     * @see GeneralizedSuffixTree#searchInts(String, int)
+     */
+    public int[] searchInts(String word, int results) {
+        int first = firstMatch(word);
+        if (first < 0) {
+            return NO_RESULTS;
+        }
+        return collect(first, word.length(), results).toIntArray();
+    }
+
+    /**
+     * @see GeneralizedSuffixTree#search(String, IntConsumer)
+     */
+    public void search(String word, IntConsumer action) {
+        search(word, -1, action);
+    }
+
+    /**
+     * @see GeneralizedSuffixTree#search(String, int, IntConsumer)
+     */
+    public void search(String word, int results, IntConsumer action) {
+        int first = firstMatch(word);
+        if (first < 0) {
+            return;
+        }
+        for (int index : collect(first, word.length(), results).toIntArray()) {
+            action.accept(index);
+        }
+    }
+
+    /**
+     * Searches for the given word and returns at most the given number of matches,
+     * along with the total number of matches.
+     *
+     * @see GeneralizedSuffixTree#searchWithCount(String, int)
+     */
+    public GeneralizedSuffixTree.ResultInfo searchWithCount(String word, int to) {
+        int first = firstMatch(word);
+        if (first < 0) {
+            return new GeneralizedSuffixTree.ResultInfo(IntSet.modifiableSet(NO_RESULTS), 0);
+        }
+        IntSet all = collect(first, word.length(), -1);
+        if (to < 0 || all.size() <= to) {
+            return new GeneralizedSuffixTree.ResultInfo(all.toModifiableSet(), all.size());
+        }
+        var some = new IntSet();
+        for (int i = 0; i < to; i++) {
+            some.add(all.get(i));
+        }
+        return new GeneralizedSuffixTree.ResultInfo(some.toModifiableSet(), all.size());
+    }
+
+    /**
+     * Returns the number of distinct indexes stored in the index
+     */
+    public int computeCount() {
+        return indexCount;
+    }
+
+    /**
+     * Returns the position in the suffix array of the first suffix starting with
+     * <tt>word</tt>, or -1 if there is none.
+     *
+     * The binary search keeps track of how many chars of <tt>word</tt> match the suffixes
+     * at both ends of the range, so that comparisons can skip the chars that all the
+     * suffixes in the range share with <tt>word</tt>.
+     */
+    private int firstMatch(String word) {
+        int m = word.length();
+        if (m == 0) {
+            return -1;
+        }
+        int low = 0;
+        int high = suffixes.length;
+        int lowMatch = 0;
+        int highMatch = 0;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            int p = suffixes[mid];
+            int end = keyEnd(p);
+            int k = Math.min(lowMatch, highMatch);
+            while (k < m && p + k < end && text[p + k] == word.charAt(k)) {
+                k++;
+            }
+            if (k == m || (p + k < end && text[p + k] > word.charAt(k))) {
+                high = mid;
+                highMatch = k;
+            } else {
+                low = mid + 1;
+                lowMatch = k;
+            }
+        }
+        return low < suffixes.length && highMatch == m ? low : -1;
+    }
+
+    /**
+     * Collects the indexes of the keys of the suffixes starting with a word of length
+     * <tt>m</tt>, from the first one onwards.
+     */
+    private IntSet collect(int first, int m, int results) {
+        var found = new IntSet();
+        for (int r = first; found.size() != results && (r == first || (r < suffixes.length && lcp[r] >= m)); r++) {
+            found.add(indexes[keyOf(suffixes[r])]);
+        }
+        return found;
+    }
+
+    /**
+     * Returns the key the given position of the text belongs to
+     */
+    private int keyOf(int position) {
+        int key = Arrays.binarySearch(keyStarts, position);
+        if (key < 0) {
+            return -key - 2;
+        }
+        // skip empty keys starting at the same position
+        while (keyStarts[key + 1] == position) {
+            key++;
+        }
+        return key;
+    }
+
+    private int keyEnd(int position) {
+        return keyStarts[keyOf(position) + 1];
+    }
+}
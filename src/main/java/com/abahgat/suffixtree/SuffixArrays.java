@@ -0,0 +1,168 @@
+/**
+ * Copyright 2012 Alessandro Bahgat Shehata
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.abahgat.suffixtree;
+
+import java.util.Arrays;
+
+/**
+ * Suffix array construction, by induced sorting (SA-IS).
+ *
+ * See Nong, Zhang and Chan, "Two Efficient Algorithms for Linear Time Suffix Array
+ * Construction". Suffixes are classified as S-type or L-type, the leftmost S-type
+ * suffixes (LMS) are sorted recursively and the order of all the other suffixes is
+ * induced from theirs, in time linear in the length of the input.
+ */
+class SuffixArrays {
+
+    private SuffixArrays() {
+    }
+
+    /**
+     * Returns the suffix array of <tt>s</tt>, i.e. the starting positions of its
+     * suffixes in lexicographic order.
+     *
+     * @param s the input, whose values must range from 0 to <tt>upper</tt>
+     * @param upper the largest value in the input
+     */
+    static int[] sais(int[] s, int upper) {
+        int n = s.length;
+        if (n == 0) {
+            return new int[0];
+        }
+        if (n == 1) {
+            return new int[] { 0 };
+        }
+        if (n == 2) {
+            return s[0] < s[1] ? new int[] { 0, 1 } : new int[] { 1, 0 };
+        }
+
+        // ls[i] is true if the suffix starting at i is S-type, i.e. smaller than the next one
+        var ls = new boolean[n];
+        for (int i = n - 2; i >= 0; i--) {
+            ls[i] = s[i] == s[i + 1] ? ls[i + 1] : s[i] < s[i + 1];
+        }
+
+        // bucket boundaries: sumL[c] is where L-type suffixes starting with c go,
+        // sumS[c] where S-type suffixes starting with c go
+        var sumL = new int[upper + 1];
+        var sumS = new int[upper + 1];
+        for (int i = 0; i < n; i++) {
+            if (!ls[i]) {
+                sumS[s[i]]++;
+            } else if (s[i] < upper) {
+                sumL[s[i] + 1]++;
+            }
+        }
+        for (int c = 0; c <= upper; c++) {
+            sumS[c] += sumL[c];
+            if (c < upper) {
+                sumL[c + 1] += sumS[c];
+            }
+        }
+
+        var lmsMap = new int[n + 1];
+        Arrays.fill(lmsMap, -1);
+        int m = 0;
+        for (int i = 1; i < n; i++) {
+            if (!ls[i - 1] && ls[i]) {
+                lmsMap[i] = m++;
+            }
+        }
+        var lms = new int[m];
+        m = 0;
+        for (int i = 1; i < n; i++) {
+            if (!ls[i - 1] && ls[i]) {
+                lms[m++] = i;
+            }
+        }
+
+        var sa = new int[n];
+        induce(s, sa, ls, sumL, sumS, lms);
+
+        if (m > 0) {
+            // name the LMS substrings by their rank, and sort the LMS suffixes recursively
+            var sortedLms = new int[m];
+            int k = 0;
+            for (int v : sa) {
+                if (lmsMap[v] != -1) {
+                    sortedLms[k++] = v;
+                }
+            }
+            var recS = new int[m];
+            int recUpper = 0;
+            recS[lmsMap[sortedLms[0]]] = 0;
+            for (int i = 1; i < m; i++) {
+                int l = sortedLms[i - 1];
+                int r = sortedLms[i];
+                int endL = lmsMap[l] + 1 < m ? lms[lmsMap[l] + 1] : n;
+                int endR = lmsMap[r] + 1 < m ? lms[lmsMap[r] + 1] : n;
+                boolean same = true;
+                if (endL - l != endR - r) {
+                    same = false;
+                } else {
+                    while (l < endL && s[l] == s[r]) {
+                        l++;
+                        r++;
+                    }
+                    if (l == n || s[l] != s[r]) {
+                        same = false;
+                    }
+                }
+                if (!same) {
+                    recUpper++;
+                }
+                recS[lmsMap[sortedLms[i]]] = recUpper;
+            }
+
+            int[] recSa = sais(recS, recUpper);
+            for (int i = 0; i < m; i++) {
+                sortedLms[i] = lms[recSa[i]];
+            }
+            induce(s, sa, ls, sumL, sumS, sortedLms);
+        }
+        return sa;
+    }
+
+    /**
+     * Places the given LMS suffixes at the end of their buckets, in order, and induces
+     * the order of the L-type and then of the S-type suffixes from them.
+     */
+    private static void induce(int[] s, int[] sa, boolean[] ls, int[] sumL, int[] sumS, int[] lms) {
+        int n = s.length;
+        Arrays.fill(sa, -1);
+        var buf = Arrays.copyOf(sumS, sumS.length);
+        for (int d : lms) {
+            if (d != n) {
+                sa[buf[s[d]]++] = d;
+            }
+        }
+        buf = Arrays.copyOf(sumL, sumL.length);
+        sa[buf[s[n - 1]]++] = n - 1;
+        for (int i = 0; i < n; i++) {
+            int v = sa[i];
+            if (v >= 1 && !ls[v - 1]) {
+                sa[buf[s[v - 1]]++] = v - 1;
+            }
+        }
+        buf = Arrays.copyOf(sumL, sumL.length);
+        for (int i = n - 1; i >= 0; i--) {
+            int v = sa[i];
+            if (v >= 1 && ls[v - 1]) {
+                sa[--buf[s[v - 1] + 1]] = v - 1;
+            }
+        }
+    }
+}
@@ -0,0 +1,129 @@
+/**
+ * Copyright 2012 Alessandro Bahgat Shehata
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.abahgat.suffixtree;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.function.IntConsumer;
+
+/**
+ * An index over a set of keys, each of them associated with an int index, that
+ * retrieves the indexes of the keys containing a given word.
+ *
+ * After <tt>put(K, V)</tt> on a {@link GeneralizedSuffixTree} (or building an
+ * index from the same keys), <tt>search(H)</tt> returns a collection containing V
+ * for any non-empty string H that is substring of K. Implementations differ in how
+ * they are built and in the trade-off they make between memory and search time, but
+ * return the same results.
+ *
+ * @see GeneralizedSuffixTree
+ */
+public interface SuffixIndex {
+
+    /**
+     * Searches for the given word within the index.
+     *
+     * The result is a modifiable set owned by the caller, holding a boxed copy of the
+     * indexes: {@link #searchInts(String)} returns them without boxing.
+     *
+     * @param word the key to search for
+     * @return the collection of indexes associated with the input <tt>word</tt>
+     */
+    Collection<Integer> search(String word);
+
+    /**
+     * Searches for the given word within the index and returns at most the given number of matches.
+     *
+     * @param word the key to search for
+     * @param results the max number of results to return, or a negative number for all of them
+     * @return at most <tt>results</tt> values for the given word
+     */
+    Collection<Integer> search(String word, int results);
+
+    /**
+     * Searches for the given word within the index, returning the indexes found as native ints.
+     *
+     * @param word the key to search for
+     * @return the indexes associated with the input <tt>word</tt>
+     */
+    int[] searchInts(String word);
+
+    /**
+     * Searches for the given word within the index and returns at most the given number of
+     * matches, as native ints.
+     *
+     * @param word the key to search for
+     * @param results the max number of results to return, or a negative number for all of them
+     * @return at most <tt>results</tt> indexes for the given word
+     */
+    int[] searchInts(String word, int results);
+
+    /**
+     * Searches for the given word within the index, passing each of the indexes found to
+     * <tt>action</tt>.
+     *
+     * @param word the key to search for
+     * @param action the callback receiving every index associated with <tt>word</tt>
+     */
+    void search(String word, IntConsumer action);
+
+    /**
+     * Searches for the given word within the index, passing at most the given number of
+     * matches to <tt>action</tt>.
+     *
+     * @param word the key to search for
+     * @param results the max number of results to return, or a negative number for all of them
+     * @param action the callback receiving the indexes associated with <tt>word</tt>
+     */
+    void search(String word, int results, IntConsumer action);
+
+    /**
+     * Searches for all the given words within the index, returning at most the given
+     * number of matches for each of them, as native ints.
+     *
+     * Implementations may share work between the words, e.g. by searching words with
+     * a common prefix together.
+     *
+     * @param words the keys to search for
+     * @param results the max number of results to return for each word, or a negative
+     *                number for all of them
+     * @return for each word, in the same order, at most <tt>results</tt> indexes for it
+     */
+    default int[][] searchAll(List<String> words, int results) {
+        var found = new int[words.size()][];
+        for (int i = 0; i < found.length; i++) {
+            found[i] = searchInts(words.get(i), results);
+        }
+        return found;
+    }
+
+    /**
+     * Searches for the given word within the index and returns at most the given number of
+     * matches, together with the total number of matches.
+     *
+     * @param word the key to search for
+     * @param to the max number of results to return, or a negative number for all of them
+     * @return at most <tt>to</tt> values for the given word, and the total number of values
+     */
+    GeneralizedSuffixTree.ResultInfo searchWithCount(String word, int to);
+
+    /**
+     * Returns the number of distinct indexes stored in the index.
+     *
+     * As in a suffix tree, indexes stored only under empty keys are not counted.
+     */
+    int computeCount();
+}
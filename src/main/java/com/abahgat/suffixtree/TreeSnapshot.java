@@ -0,0 +1,203 @@
+/**
+ * Copyright 2012 Alessandro Bahgat Shehata
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.abahgat.suffixtree;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads and writes snapshots of a {@link GeneralizedSuffixTree}.
+ *
+ * A snapshot stores the tree as it is in memory: nodes, edges, suffix links, payloads
+ * and result counts are written as they are and restored without running the
+ * construction algorithm again, so that loading a snapshot is bound by I/O.
+ * A restored tree can keep receiving new keys.
+ *
+ * The format is made of:
+ * <ul>
+ *     <li>a header, with a magic number and the format version</li>
+ *     <li>the largest index added to the tree</li>
+ *     <li>the strings edge labels are taken from, each written once</li>
+ *     <li>the indexes in the tree, each with its weight and the keys it was added with,
+ *     as references to those strings</li>
+ *     <li>the nodes, in depth-first order, each with its suffix link, its payload
+ *     (in its compressed form), the keys ending in it, its result count, its weight bound
+ *     and its edges</li>
+ * </ul>
+ */
+class TreeSnapshot {
+    /**
+     * The first bytes of every snapshot ("GSTS")
+     */
+    private static final int MAGIC = 0x47535453;
+    /**
+     * The version of the snapshot format
+     */
+    private static final int VERSION = 6;
+
+    private TreeSnapshot() {
+    }
+
+    /**
+     * Writes a snapshot of <tt>tree</tt> to <tt>out</tt>
+     */
+    static void write(GeneralizedSuffixTree tree, DataOutput out) throws IOException {
+        // number nodes, so that suffix links and edges can refer to them
+        List<Node> nodes = new ArrayList<>();
+        Map<Node, Integer> ids = new IdentityHashMap<>();
+        Map<String, Integer> sources = new IdentityHashMap<>();
+        List<String> sourceList = new ArrayList<>();
+        var stack = new ArrayDeque<Node>();
+        stack.push(tree.getRoot());
+        while (!stack.isEmpty()) {
+            Node node = stack.pop();
+            ids.put(node, nodes.size());
+            nodes.add(node);
+            for (Edge e : node.getEdges().values()) {
+                if (!sources.containsKey(e.getSource())) {
+                    sources.put(e.getSource(), sourceList.size());
+                    sourceList.add(e.getSource());
+                }
+                stack.push(e.getDest());
+            }
+        }
+        KeyTable keyTable = tree.getKeyTable();
+        for (int i = 0; i < keyTable.size(); i++) {
+            for (int j = 0; j < keyTable.keyCountAt(i); j++) {
+                String key = keyTable.keyAt(i, j);
+                if (!sources.containsKey(key)) {
+                    sources.put(key, sourceList.size());
+                    sourceList.add(key);
+                }
+            }
+        }
+
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeInt(tree.getLast());
+
+        out.writeInt(sourceList.size());
+        for (String source : sourceList) {
+            out.writeInt(source.length());
+            out.writeChars(source);
+        }
+
+        out.writeInt(keyTable.size());
+        for (int i = 0; i < keyTable.size(); i++) {
+            out.writeInt(keyTable.indexAt(i));
+            out.writeFloat(keyTable.weightAt(i));
+            out.writeInt(keyTable.keyCountAt(i));
+            for (int j = 0; j < keyTable.keyCountAt(i); j++) {
+                out.writeInt(sources.get(keyTable.keyAt(i, j)));
+            }
+        }
+
+        out.writeInt(nodes.size());
+        for (Node node : nodes) {
+            out.writeInt(node.getSuffix() == null ? -1 : ids.get(node.getSuffix()));
+            out.writeInt(node.getResultCount());
+            out.writeInt(node.getMaxIndex());
+            out.writeFloat(node.getMaxWeight());
+            node.writePayloadTo(out);
+            out.writeInt(node.edgeCount());
+            for (int i = 0; i < node.edgeCount(); i++) {
+                Edge e = node.edgeAt(i);
+                out.writeInt(sources.get(e.getSource()));
+                out.writeInt(e.getStart());
+                out.writeInt(e.getEnd());
+                out.writeInt(ids.get(e.getDest()));
+            }
+        }
+    }
+
+    /**
+     * Reads a snapshot that was written using {@link #write(GeneralizedSuffixTree, DataOutput)}
+     *
+     * @throws IOException if the input cannot be read or does not contain a valid snapshot
+     */
+    static GeneralizedSuffixTree read(DataInput in) throws IOException {
+        try {
+            return readTree(in);
+        } catch (IndexOutOfBoundsException | NegativeArraySizeException e) {
+            throw new IOException("Corrupted suffix tree snapshot", e);
+        }
+    }
+
+    private static GeneralizedSuffixTree readTree(DataInput in) throws IOException {
+        if (in.readInt() != MAGIC) {
+            throw new IOException("Input is not a suffix tree snapshot");
+        }
+        int version = in.readInt();
+        if (version != VERSION) {
+            throw new IOException("Unsupported snapshot version " + version);
+        }
+        int last = in.readInt();
+
+        var sources = new String[in.readInt()];
+        for (int i = 0; i < sources.length; i++) {
+            var chars = new char[in.readInt()];
+            for (int j = 0; j < chars.length; j++) {
+                chars[j] = in.readChar();
+            }
+            sources[i] = new String(chars);
+        }
+
+        var keyTable = new KeyTable();
+        int keyTableSize = in.readInt();
+        for (int i = 0; i < keyTableSize; i++) {
+            int index = in.readInt();
+            float weight = in.readFloat();
+            int keyCount = in.readInt();
+            for (int j = 0; j < keyCount; j++) {
+                keyTable.add(index, sources[in.readInt()], weight);
+            }
+        }
+
+        var nodes = new Node[in.readInt()];
+        if (nodes.length == 0) {
+            throw new IOException("Snapshot does not contain a root node");
+        }
+        for (int i = 0; i < nodes.length; i++) {
+            nodes[i] = new Node();
+        }
+        for (Node node : nodes) {
+            int suffix = in.readInt();
+            int resultCount = in.readInt();
+            int maxIndex = in.readInt();
+            float maxWeight = in.readFloat();
+            node.restore(suffix < 0 ? null : nodes[suffix], resultCount, maxIndex, maxWeight);
+            node.readPayloadFrom(in);
+
+            int edgeCount = in.readInt();
+            for (int i = 0; i < edgeCount; i++) {
+                String source = sources[in.readInt()];
+                int start = in.readInt();
+                int end = in.readInt();
+                node.putEdge(new Edge(source, start, end, nodes[in.readInt()]));
+            }
+        }
+        var tree = new GeneralizedSuffixTree(nodes[0], last);
+        tree.getKeyTable().addAll(keyTable);
+        tree.markKeyIds();
+        return tree;
+    }
+}
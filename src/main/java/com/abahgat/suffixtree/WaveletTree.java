@@ -0,0 +1,202 @@
+/**
+ * Copyright 2012 Alessandro Bahgat Shehata
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.abahgat.suffixtree;
+
+import java.util.Arrays;
+import java.util.PriorityQueue;
+
+/**
+ * A sequence of small ints supporting access and rank queries, shaped after the
+ * Huffman code of its values (see Mäkinen and Navarro, "Succinct suffix arrays based
+ * on run-length encoding").
+ *
+ * Each internal node of the Huffman tree stores a bit for each value whose code goes
+ * through it, telling which child the value belongs to: the bits taken by a value are
+ * as many as the bits of its code, so the sequence takes n(H0 + 1) bits at most, where
+ * H0 is the zero-order entropy of its values, plus the overhead of the rank directories.
+ * Access and rank queries take time proportional to the length of the code of the
+ * value involved, O(H0) on average.
+ */
+class WaveletTree {
+    /**
+     * The bits of each internal node
+     */
+    private final RankBitVector[] bits;
+    /**
+     * The children of each internal node: the number of another internal node, or
+     * -1 - v for the leaf of value v
+     */
+    private final int[] left;
+    private final int[] right;
+    /**
+     * The root of the tree, encoded as a child
+     */
+    private final int root;
+    /**
+     * The code of each value, its bits going from the root to the leaf of the value
+     */
+    private final long[] codes;
+    /**
+     * The length of the code of each value, -1 for the values that do not occur
+     */
+    private final byte[] lengths;
+    private final int size;
+
+    /**
+     * Builds the wavelet tree of the given values.
+     *
+     * @param values the values to store, ranging from 0 to <tt>upper</tt>
+     * @param upper the largest value in <tt>values</tt>
+     */
+    WaveletTree(int[] values, int upper) {
+        this.size = values.length;
+        var frequencies = new long[upper + 1];
+        for (int v : values) {
+            frequencies[v]++;
+        }
+
+        // Huffman's algorithm, merging the two lightest subtrees until one is left.
+        // Subtrees are packed with their weight in the high bits, so that ties are
+        // broken by the order they were created in.
+        var subtrees = new PriorityQueue<Long>();
+        var created = new int[2 * (upper + 1)];
+        int count = 0;
+        for (int v = 0; v <= upper; v++) {
+            if (frequencies[v] > 0) {
+                created[count] = -1 - v;
+                subtrees.add(frequencies[v] << 20 | count++);
+            }
+        }
+        int internal = Math.max(0, subtrees.size() - 1);
+        this.bits = new RankBitVector[internal];
+        this.left = new int[internal];
+        this.right = new int[internal];
+        for (int node = 0; node < internal; node++) {
+            long first = subtrees.remove();
+            long second = subtrees.remove();
+            left[node] = created[(int) (first & 0xFFFFF)];
+            right[node] = created[(int) (second & 0xFFFFF)];
+            created[count] = node;
+            subtrees.add(((first >>> 20) + (second >>> 20)) << 20 | count++);
+        }
+        this.root = subtrees.isEmpty() ? -1 : created[(int) (subtrees.remove() & 0xFFFFF)];
+
+        this.codes = new long[upper + 1];
+        this.lengths = new byte[upper + 1];
+        Arrays.fill(lengths, (byte) -1);
+        assignCodes(root, 0, 0);
+        if (size > 0) {
+            build(root, 0, values.clone(), new int[size], 0, size);
+        }
+    }
+
+    private void assignCodes(int node, long code, int length) {
+        if (node < 0) {
+            codes[-1 - node] = code;
+            lengths[-1 - node] = (byte) length;
+        } else {
+            assignCodes(left[node], code << 1, length + 1);
+            assignCodes(right[node], code << 1 | 1, length + 1);
+        }
+    }
+
+    /**
+     * Sets the bits of the given node, found after <tt>depth</tt> bits of the codes, for
+     * the values in positions <tt>from</tt> to <tt>to</tt> (exclusive) of <tt>values</tt>,
+     * then stably partitions them by their bit and does the same for the children, using
+     * <tt>buffer</tt> as scratch space.
+     */
+    private void build(int node, int depth, int[] values, int[] buffer, int from, int to) {
+        if (node < 0) {
+            return;
+        }
+        var level = new RankBitVector(to - from);
+        int ones = 0;
+        for (int i = from; i < to; i++) {
+            int v = values[i];
+            if ((codes[v] >>> (lengths[v] - 1 - depth) & 1) != 0) {
+                level.set(i - from);
+                buffer[ones++] = v;
+            }
+        }
+        level.seal();
+        bits[node] = level;
+        int zeros = from;
+        for (int i = from; i < to; i++) {
+            int v = values[i];
+            if ((codes[v] >>> (lengths[v] - 1 - depth) & 1) == 0) {
+                values[zeros++] = v;
+            }
+        }
+        System.arraycopy(buffer, 0, values, zeros, ones);
+        build(left[node], depth + 1, values, buffer, from, zeros);
+        build(right[node], depth + 1, values, buffer, zeros, to);
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * Returns the value in the given position
+     */
+    int get(int i) {
+        int node = root;
+        while (node >= 0) {
+            RankBitVector level = bits[node];
+            if (level.get(i)) {
+                i = level.rank1(i);
+                node = right[node];
+            } else {
+                i = level.rank0(i);
+                node = left[node];
+            }
+        }
+        return -1 - node;
+    }
+
+    /**
+     * Returns the number of occurrences of <tt>value</tt> in positions 0 .. i - 1
+     */
+    int rank(int value, int i) {
+        if (value >= lengths.length || lengths[value] < 0) {
+            return 0;
+        }
+        long code = codes[value];
+        int node = root;
+        for (int bit = lengths[value] - 1; bit >= 0; bit--) {
+            if ((code >>> bit & 1) != 0) {
+                i = bits[node].rank1(i);
+                node = right[node];
+            } else {
+                i = bits[node].rank0(i);
+                node = left[node];
+            }
+        }
+        return i;
+    }
+
+    /**
+     * Returns the number of bits taken by the nodes, without their rank directories
+     */
+    long bitCount() {
+        long total = 0;
+        for (RankBitVector level : bits) {
+            total += level.size();
+        }
+        return total;
+    }
+}
@@ -0,0 +1,242 @@
+/**
+ * Copyright 2012 Alessandro Bahgat Shehata
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.abahgat.suffixtree;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A search pattern made of literal chars and of wildcards, each matching a single char:
+ * <ul>
+ *     <li><tt>?</tt> matches any char</li>
+ *     <li><tt>[abc]</tt> matches any of the chars in brackets, which can include ranges
+ *     such as <tt>[a-z0-9]</tt></li>
+ *     <li><tt>[^abc]</tt> matches any char that is not in brackets</li>
+ * </ul>
+ * A <tt>\</tt> makes the following char literal, e.g. <tt>\?</tt> only matches a question mark.
+ *
+ * The pattern is matched against the paths starting from the root of a tree: runs of
+ * literal chars are compared with the edge labels as a whole, and the visit only
+ * branches over the edges leaving a node at the positions of wildcards.
+ * @see GeneralizedSuffixTree#searchPattern(String, int)
+ */
+class WildcardPattern {
+    /**
+     * The elements of the pattern, each either a String (a run of literal chars) or
+     * a {@link CharClass} (a wildcard)
+     */
+    private final Object[] elements;
+
+    private WildcardPattern(Object[] elements) {
+        this.elements = elements;
+    }
+
+    /**
+     * Parses the given pattern
+     *
+     * @throws IllegalArgumentException if a class is not closed or the pattern ends with a \
+     */
+    static WildcardPattern compile(String pattern) {
+        List<Object> elements = new ArrayList<>();
+        var literal = new StringBuilder();
+        for (int i = 0; i < pattern.length(); ) {
+            int c = pattern.codePointAt(i);
+            i += Character.charCount(c);
+            if (c == '\\') {
+                if (i == pattern.length()) {
+                    throw new IllegalArgumentException("Pattern ends with an escape: " + pattern);
+                }
+                c = pattern.codePointAt(i);
+                i += Character.charCount(c);
+                literal.appendCodePoint(c);
+            } else if (c == '?' || c == '[') {
+                if (literal.length() > 0) {
+                    elements.add(literal.toString());
+                    literal.setLength(0);
+                }
+                if (c == '?') {
+                    elements.add(new CharClass(new int[0], true));
+                } else {
+                    i = parseClass(pattern, i, elements);
+                }
+            } else {
+                literal.appendCodePoint(c);
+            }
+        }
+        if (literal.length() > 0) {
+            elements.add(literal.toString());
+        }
+        return new WildcardPattern(elements.toArray());
+    }
+
+    /**
+     * Parses the class starting after the <tt>[</tt> in the given position, and adds it to
+     * <tt>elements</tt>
+     *
+     * @return the position following the closing <tt>]</tt>
+     */
+    private static int parseClass(String pattern, int i, List<Object> elements) {
+        boolean negated = i < pattern.length() && pattern.charAt(i) == '^';
+        if (negated) {
+            i++;
+        }
+        // pairs of the first and last chars of each range
+        var ranges = new int[8];
+        int size = 0;
+        boolean first = true;
+        while (true) {
+            if (i == pattern.length()) {
+                throw new IllegalArgumentException("Unclosed character class: " + pattern);
+            }
+            int c = pattern.codePointAt(i);
+            i += Character.charCount(c);
+            if (c == ']' && !first) {
+                break;
+            }
+            first = false;
+            if (c == '\\' && i < pattern.length()) {
+                c = pattern.codePointAt(i);
+                i += Character.charCount(c);
+            }
+            int last = c;
+            if (i + 1 < pattern.length() && pattern.charAt(i) == '-' && pattern.charAt(i + 1) != ']') {
+                last = pattern.codePointAt(i + 1);
+                i += 1 + Character.charCount(last);
+                if (last < c) {
+                    throw new IllegalArgumentException("Invalid range " + Character.toString(c) + "-"
+                            + Character.toString(last) + " in " + pattern);
+                }
+            }
+            if (size == ranges.length) {
+                ranges = Arrays.copyOf(ranges, 2 * size);
+            }
+            ranges[size++] = c;
+            ranges[size++] = last;
+        }
+        elements.add(new CharClass(Arrays.copyOf(ranges, size), negated));
+        return i;
+    }
+
+    /**
+     * Returns whether the pattern is empty, in which case it matches nothing
+     */
+    boolean isEmpty() {
+        return elements.length == 0;
+    }
+
+    /**
+     * Returns the nodes below which every path starts with a string matching the pattern:
+     * each of them is the destination of the edge in which a match ends.
+     */
+    List<Node> matches(Node root) {
+        List<Node> found = new ArrayList<>();
+        var positions = new Positions();
+        // an empty edge leading to the root, so that every position is within an edge
+        positions.push(new Edge("", root), 0, 0);
+        while (positions.size > 0) {
+            positions.size--;
+            Edge edge = positions.edges[positions.size];
+            int offset = positions.offsets[positions.size];
+            int element = positions.elements[positions.size];
+            if (element == elements.length) {
+                found.add(edge.getDest());
+            } else if (elements[element] instanceof String literal) {
+                matchLiteral(literal, edge, offset, element + 1, positions);
+            } else if (offset < edge.length()) {
+                int c = edge.codePointAt(offset);
+                if (((CharClass) elements[element]).matches(c)) {
+                    positions.push(edge, offset + Character.charCount(c), element + 1);
+                }
+            } else {
+                // a wildcard at a node: branch over the edges leaving it
+                Node node = edge.getDest();
+                for (int i = 0; i < node.edgeCount(); i++) {
+                    Edge e = node.edgeAt(i);
+                    int c = e.codePointAt(0);
+                    if (((CharClass) elements[element]).matches(c)) {
+                        positions.push(e, Character.charCount(c), element + 1);
+                    }
+                }
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Follows the given run of literal chars from a position, pushing the position
+     * reached if it matches
+     */
+    private static void matchLiteral(String literal, Edge edge, int offset, int next, Positions positions) {
+        int i = 0;
+        while (true) {
+            if (offset == edge.length()) {
+                edge = edge.getDest().getEdge(literal.codePointAt(i));
+                if (edge == null) {
+                    return;
+                }
+                offset = 0;
+            }
+            int length = Math.min(literal.length() - i, edge.length() - offset);
+            if (!edge.regionMatches(offset, literal, i, length)) {
+                return;
+            }
+            i += length;
+            offset += length;
+            if (i == literal.length()) {
+                positions.push(edge, offset, next);
+                return;
+            }
+        }
+    }
+
+    /**
+     * A stack of positions in the tree, each made of an edge and of the number of chars
+     * of its label matched so far, along with the next element of the pattern to match
+     */
+    private static class Positions {
+        private Edge[] edges = new Edge[16];
+        private int[] offsets = new int[16];
+        private int[] elements = new int[16];
+        private int size = 0;
+
+        void push(Edge edge, int offset, int element) {
+            if (size == edges.length) {
+                edges = Arrays.copyOf(edges, 2 * size);
+                offsets = Arrays.copyOf(offsets, 2 * size);
+                elements = Arrays.copyOf(elements, 2 * size);
+            }
+            edges[size] = edge;
+            offsets[size] = offset;
+            elements[size] = element;
+            size++;
+        }
+    }
+
+    /**
+     * A set of chars, made of ranges
+     */
+    private record CharClass(int[] ranges, boolean negated) {
+        boolean matches(int c) {
+            for (int i = 0; i < ranges.length; i += 2) {
+                if (ranges[i] <= c && c <= ranges[i + 1]) {
+                    return !negated;
+                }
+            }
+            return negated;
+        }
+    }
+}
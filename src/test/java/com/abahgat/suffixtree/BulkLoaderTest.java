@@ -0,0 +1,142 @@
+/**
+ * Copyright 2012 Alessandro Bahgat Shehata
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.abahgat.suffixtree;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class BulkLoaderTest {
+
+    @Test
+    public void testSameResultsAsPut() {
+        String[] alphabet = { "a", "b", "c", "😀" };
+        Random random = new Random(17);
+        List<String> words = new ArrayList<>();
+        for (int i = 0; i < 6000; ++i) {
+            words.add(randomWord(random, 1 + random.nextInt(12), alphabet));
+        }
+
+        GeneralizedSuffixTree expected = new GeneralizedSuffixTree();
+        for (int i = 0; i < words.size(); ++i) {
+            expected.put(words.get(i), i);
+        }
+        var pool = new ForkJoinPool(4);
+        GeneralizedSuffixTree loaded = GeneralizedSuffixTree.bulkLoad(words, pool);
+        pool.shutdown();
+
+        assertEquals(expected.computeCount(), loaded.computeCount());
+        assertCounts(loaded.getRoot());
+        for (int i = 0; i < 1000; ++i) {
+            String query = randomWord(random, 1 + random.nextInt(6), alphabet);
+            assertEquals(Set.copyOf(expected.search(query)), Set.copyOf(loaded.search(query)), () -> "wrong results for " + query);
+            assertEquals(expected.searchWithCount(query, 1).totalResults(), loaded.searchWithCount(query, 1).totalResults());
+        }
+    }
+
+    @Test
+    public void testPutAfterLoad() {
+        String[] alphabet = { "a", "b", "c" };
+        Random random = new Random(19);
+        List<String> words = new ArrayList<>();
+        for (int i = 0; i < 3000; ++i) {
+            words.add(randomWord(random, 1 + random.nextInt(10), alphabet));
+        }
+        var pool = new ForkJoinPool(2);
+        GeneralizedSuffixTree loaded = GeneralizedSuffixTree.bulkLoad(words, pool);
+        pool.shutdown();
+        for (int i = words.size(); i < 3500; ++i) {
+            String word = randomWord(random, 1 + random.nextInt(10), alphabet);
+            words.add(word);
+            loaded.put(word, i);
+        }
+
+        assertCounts(loaded.getRoot());
+        for (int i = 0; i < 500; ++i) {
+            String query = randomWord(random, 1 + random.nextInt(6), alphabet);
+            Set<Integer> expected = new HashSet<>();
+            for (int j = 0; j < words.size(); ++j) {
+                if (words.get(j).contains(query)) {
+                    expected.add(j);
+                }
+            }
+            assertEquals(expected, Set.copyOf(loaded.search(query)), () -> "wrong results for " + query);
+        }
+    }
+
+    @Test
+    public void testRelink() {
+        Random random = new Random(23);
+        GeneralizedSuffixTree in = new GeneralizedSuffixTree();
+        for (int i = 0; i < 500; ++i) {
+            in.put(randomWord(random, 1 + random.nextInt(10), new String[] { "a", "b", "c" }), i);
+        }
+
+        Map<Node, Node> links = new IdentityHashMap<>();
+        var nodes = new ArrayDeque<Node>();
+        nodes.push(in.getRoot());
+        while (!nodes.isEmpty()) {
+            Node node = nodes.pop();
+            links.put(node, node.getSuffix());
+            for (int i = 0; i < node.edgeCount(); ++i) {
+                nodes.push(node.edgeAt(i).getDest());
+            }
+        }
+
+        BulkLoader.relink(in.getRoot());
+        for (var link : links.entrySet()) {
+            assertSame(link.getValue(), link.getKey().getSuffix());
+        }
+    }
+
+    @Test
+    public void testEmpty() {
+        GeneralizedSuffixTree loaded = GeneralizedSuffixTree.bulkLoad(List.of());
+        assertTrue(loaded.search("a").isEmpty());
+        loaded.put("banana", 0);
+        assertEquals(Set.of(0), Set.copyOf(loaded.search("nan")));
+    }
+
+    private static void assertCounts(Node root) {
+        var nodes = new ArrayDeque<Node>();
+        nodes.push(root);
+        while (!nodes.isEmpty()) {
+            Node node = nodes.pop();
+            assertEquals(node.getData().size(), node.getResultCount());
+            for (int i = 0; i < node.edgeCount(); ++i) {
+                nodes.push(node.edgeAt(i).getDest());
+            }
+        }
+    }
+
+    private static String randomWord(Random random, int length, String[] alphabet) {
+        StringBuilder word = new StringBuilder();
+        for (int j = 0; j < length; ++j) {
+            word.append(alphabet[random.nextInt(alphabet.length)]);
+        }
+        return word.toString();
+    }
+}
@@ -0,0 +1,149 @@
+/**
+ * Copyright 2012 Alessandro Bahgat Shehata
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.abahgat.suffixtree;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static com.abahgat.suffixtree.Utils.getSubstrings;
+
+public class CompactSuffixTreeTest {
+
+    @Test
+    public void testSameResults() {
+        GeneralizedSuffixTree in = new GeneralizedSuffixTree();
+        String[] words = new String[] { "cacaor", "caricato", "cacato", "cacata", "caricata", "cacao", "banana" };
+        for (int i = 0; i < words.length; ++i) {
+            in.put(words[i], i);
+        }
+        CompactSuffixTree compact = new CompactSuffixTree(in);
+
+        for (String word : words) {
+            for (String s : getSubstrings(word)) {
+                assertEquals(Set.copyOf(in.search(s)), Set.copyOf(compact.search(s)));
+                assertEquals(in.searchWithCount(s, 2).totalResults(), compact.searchWithCount(s, 2).totalResults());
+                assertEquals(Math.min(2, in.search(s).size()), compact.searchInts(s, 2).length);
+            }
+        }
+        assertTrue(compact.search("aoca").isEmpty());
+        assertTrue(compact.search("").isEmpty());
+        assertEquals(0, compact.searchWithCount("cacaoo", 10).totalResults());
+    }
+
+    @Test
+    public void testRandomWords() {
+        Random random = new Random(1234);
+        GeneralizedSuffixTree in = new GeneralizedSuffixTree();
+        for (int i = 0; i < 500; ++i) {
+            in.put(randomWord(random, 1 + random.nextInt(10)), i);
+        }
+        CompactSuffixTree compact = new CompactSuffixTree(in);
+
+        for (int i = 0; i < 1000; ++i) {
+            String query = randomWord(random, 1 + random.nextInt(5));
+            assertEquals(Set.copyOf(in.search(query)), Set.copyOf(compact.search(query)));
+            assertEquals(in.searchWithCount(query, 0).totalResults(), compact.searchWithCount(query, 0).totalResults());
+
+            Set<Integer> found = new HashSet<>();
+            compact.search(query, 3, index -> assertTrue(found.add(index)));
+            assertEquals(Math.min(3, in.search(query).size()), found.size());
+        }
+    }
+
+    @Test
+    public void testSuffixLinks() {
+        GeneralizedSuffixTree in = new GeneralizedSuffixTree();
+        in.put("mississippi", 0);
+        in.put("missouri", 1);
+        CompactSuffixTree compact = new CompactSuffixTree(in);
+
+        assertEquals(-1, compact.suffixLink(0));
+        for (int n = 1; n < compact.nodeCount(); ++n) {
+            assertTrue(compact.suffixLink(n) < compact.nodeCount());
+        }
+    }
+
+    @Test
+    public void testSupplementaryCharacters() {
+        GeneralizedSuffixTree in = new GeneralizedSuffixTree();
+        in.put("😀😁😂", 1);
+        in.put("こんにちは", 2);
+        CompactSuffixTree compact = new CompactSuffixTree(in);
+
+        assertEquals(Set.of(1), Set.copyOf(compact.search("😁")));
+        assertEquals(Set.of(2), Set.copyOf(compact.search("んに")));
+        assertTrue(compact.search("🤣").isEmpty());
+    }
+
+    @Test
+    public void testWriteAndOpen(@TempDir Path dir) throws IOException {
+        Random random = new Random(99);
+        GeneralizedSuffixTree in = new GeneralizedSuffixTree();
+        for (int i = 0; i < 300; ++i) {
+            in.put(randomWord(random, 1 + random.nextInt(10)), i);
+        }
+        in.put("😀😁😂", 300);
+        CompactSuffixTree compact = new CompactSuffixTree(in);
+        Path file = dir.resolve("tree.gst");
+        compact.writeTo(file);
+
+        CompactSuffixTree mapped = CompactSuffixTree.open(file);
+        assertEquals(compact.nodeCount(), mapped.nodeCount());
+        for (int i = 0; i < 500; ++i) {
+            String query = randomWord(random, 1 + random.nextInt(5));
+            assertEquals(Set.copyOf(compact.search(query)), Set.copyOf(mapped.search(query)));
+            assertEquals(compact.searchWithCount(query, 0).totalResults(), mapped.searchWithCount(query, 0).totalResults());
+        }
+        assertEquals(Set.of(300), Set.copyOf(mapped.search("😁")));
+
+        // a copy written from the mapped file must be identical
+        Path copy = dir.resolve("copy.gst");
+        mapped.writeTo(copy);
+        assertArrayEquals(Files.readAllBytes(file), Files.readAllBytes(copy));
+    }
+
+    @Test
+    public void testOpenInvalidFile(@TempDir Path dir) throws IOException {
+        Path file = dir.resolve("invalid.gst");
+        Files.write(file, new byte[] { 1, 2, 3 });
+        assertThrows(IOException.class, () -> CompactSuffixTree.open(file));
+
+        GeneralizedSuffixTree in = new GeneralizedSuffixTree();
+        in.put("banana", 0);
+        new CompactSuffixTree(in).writeTo(file);
+        byte[] bytes = Files.readAllBytes(file);
+        Files.write(file, Arrays.copyOf(bytes, bytes.length - 2));
+        assertThrows(IOException.class, () -> CompactSuffixTree.open(file));
+    }
+
+    private static String randomWord(Random random, int length) {
+        StringBuilder word = new StringBuilder();
+        for (int j = 0; j < length; ++j) {
+            word.append((char) ('a' + random.nextInt(4)));
+        }
+        return word.toString();
+    }
+}
@@ -0,0 +1,112 @@
+/**
+ * Copyright 2012 Alessandro Bahgat Shehata
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.abahgat.suffixtree;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ConcurrentSuffixTreeTest {
+
+    @Test
+    public void testPutAndSearch() {
+        var tree = new ConcurrentSuffixTree();
+        tree.put("banana", 0);
+        tree.putAll(List.of("cacao", "bandana"), 1);
+
+        assertEquals(Set.of(0, 2), Set.copyOf(tree.search("ana")));
+        assertEquals(Set.of(1), Set.copyOf(tree.search("cao")));
+        assertEquals(2, tree.searchWithCount("ban", 1).totalResults());
+        assertEquals(3, tree.computeCount());
+        assertTrue(tree.search("ananas").isEmpty());
+        assertThrows(NullPointerException.class, () -> tree.put(null, 3));
+        assertEquals(3, tree.computeCount());
+    }
+
+    @Test
+    public void testRemove() {
+        var tree = new ConcurrentSuffixTree();
+        tree.putAll(List.of("banana", "cacao", "bandana"), 0);
+        tree.remove(2);
+        // the removal must be applied to both copies
+        for (int i = 0; i < 3; ++i) {
+            assertEquals(Set.of(0), Set.copyOf(tree.search("ana")));
+            assertEquals(1, tree.searchWithCount("ban", 5).totalResults());
+            tree.put("x", 3 + i);
+        }
+        assertEquals(5, tree.computeCount());
+    }
+
+    @Test
+    public void testFromTree() {
+        var tree = new ConcurrentSuffixTree(GeneralizedSuffixTree.bulkLoad(List.of("banana", "cacao")));
+        tree.put("ananas", 2);
+        // the new key must be visible in both copies
+        for (int i = 0; i < 3; ++i) {
+            assertEquals(Set.of(0, 2), Set.copyOf(tree.search("anan")));
+            tree.put("x", 3 + i);
+        }
+    }
+
+    @Test
+    public void testConsistentSnapshots() throws Exception {
+        var tree = new ConcurrentSuffixTree();
+        var done = new AtomicBoolean(false);
+        ExecutorService readers = Executors.newFixedThreadPool(4);
+        List<Future<Integer>> results = new ArrayList<>();
+        for (int r = 0; r < 4; ++r) {
+            results.add(readers.submit(() -> {
+                int reads = 0;
+                while (!done.get() || reads == 0) {
+                    // keys are published in order, so any snapshot holds a prefix of them
+                    int[] found = tree.searchInts("key");
+                    Arrays.sort(found);
+                    for (int i = 0; i < found.length; ++i) {
+                        assertEquals(i, found[i]);
+                    }
+                    int count = tree.searchWithCount("key", 1).totalResults();
+                    assertTrue(count >= found.length);
+                    reads++;
+                }
+                return reads;
+            }));
+        }
+
+        for (int i = 0; i < 2000; ++i) {
+            if (i % 10 == 0) {
+                tree.putAll(List.of("key" + i, "akey" + (i + 1)), i);
+                ++i;
+            } else {
+                tree.put("the key " + i, i);
+            }
+        }
+        done.set(true);
+        for (Future<Integer> result : results) {
+            assertTrue(result.get() > 0);
+        }
+        readers.shutdown();
+        assertEquals(2000, tree.search("key").size());
+    }
+}
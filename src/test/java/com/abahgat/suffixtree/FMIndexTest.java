@@ -0,0 +1,148 @@
+/**
+ * Copyright 2012 Alessandro Bahgat Shehata
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.abahgat.suffixtree;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static com.abahgat.suffixtree.Utils.getSubstrings;
+
+public class FMIndexTest {
+
+    @Test
+    public void testWaveletTree() {
+        Random random = new Random(41);
+        for (int upper : new int[] { 0, 1, 5, 200 }) {
+            // skewed frequencies, with some values missing
+            int[] values = new int[1500];
+            for (int i = 0; i < values.length; ++i) {
+                values[i] = Math.min(upper, (int) Math.abs(random.nextGaussian() * upper / 4));
+            }
+            var tree = new WaveletTree(values, upper);
+            int[] counts = new int[upper + 1];
+            for (int i = 0; i < values.length; ++i) {
+                assertEquals(values[i], tree.get(i));
+                int c = random.nextInt(upper + 1);
+                assertEquals(counts[c], tree.rank(c, i));
+                counts[values[i]]++;
+            }
+            assertEquals(counts[upper], tree.rank(upper, values.length));
+            assertEquals(0, tree.rank(upper + 1, values.length));
+
+            // a Huffman code takes less than H0 + 1 bits per value
+            double entropy = 0;
+            for (int count : counts) {
+                if (count > 0) {
+                    entropy -= count * Math.log((double) count / values.length) / Math.log(2);
+                }
+            }
+            assertTrue(tree.bitCount() < entropy + values.length);
+        }
+        assertEquals(0, new WaveletTree(new int[0], 3).size());
+    }
+
+    @Test
+    public void testRankBitVector() {
+        Random random = new Random(42);
+        for (int size : new int[] { 0, 1, 63, 64, 512, 1000, 5000 }) {
+            var bits = new RankBitVector(size);
+            var set = new boolean[size];
+            for (int i = 0; i < size; ++i) {
+                if (random.nextInt(3) == 0) {
+                    bits.set(i);
+                    set[i] = true;
+                }
+            }
+            bits.seal();
+            int ones = 0;
+            for (int i = 0; i < size; ++i) {
+                assertEquals(ones, bits.rank1(i));
+                if (set[i]) {
+                    ones++;
+                } else {
+                    assertEquals(i, bits.select0(i - ones));
+                }
+            }
+            assertEquals(ones, bits.rank1(size));
+        }
+    }
+
+    @Test
+    public void testSameResults() {
+        String[] words = new String[] { "cacaor", "caricato", "cacato", "cacata", "caricata", "cacao", "banana", "", "ca" };
+        GeneralizedSuffixTree in = new GeneralizedSuffixTree();
+        for (int i = 0; i < words.length; ++i) {
+            in.put(words[i], i);
+        }
+        SuffixIndex index = FMIndex.build(List.of(words));
+
+        for (String word : words) {
+            for (String s : getSubstrings(word)) {
+                assertEquals(Set.copyOf(in.search(s)), Set.copyOf(index.search(s)), () -> "wrong results for " + s);
+                assertEquals(in.searchWithCount(s, 2).totalResults(), index.searchWithCount(s, 2).totalResults());
+                assertEquals(Math.min(2, in.search(s).size()), index.searchInts(s, 2).length);
+            }
+        }
+        assertTrue(index.search("aoca").isEmpty());
+        assertTrue(index.search("").isEmpty());
+        assertTrue(index.search("zzz").isEmpty());
+        assertEquals(0, index.searchWithCount("cacaoo", 10).totalResults());
+        assertEquals(in.computeCount(), index.computeCount());
+        assertTrue(FMIndex.build(List.of()).search("a").isEmpty());
+    }
+
+    @Test
+    public void testRandomWords() {
+        String[] alphabet = { "a", "b", "c", "\0", "😀" };
+        Random random = new Random(43);
+        List<String> words = new ArrayList<>();
+        int[] indexes = new int[800];
+        GeneralizedSuffixTree in = new GeneralizedSuffixTree();
+        for (int i = 0; i < indexes.length; ++i) {
+            StringBuilder word = new StringBuilder();
+            // some keys longer than the sample rate
+            int length = random.nextInt(i % 10 == 0 ? 60 : 12);
+            for (int j = 0; j < length; ++j) {
+                word.append(alphabet[random.nextInt(alphabet.length)]);
+            }
+            words.add(word.toString());
+            // repeated and out of order indexes
+            indexes[i] = random.nextInt(600);
+            in.put(word.toString(), indexes[i]);
+        }
+        FMIndex index = FMIndex.build(words, indexes);
+
+        for (int i = 0; i < 1000; ++i) {
+            StringBuilder query = new StringBuilder();
+            int length = 1 + random.nextInt(5);
+            for (int j = 0; j < length; ++j) {
+                query.append(alphabet[random.nextInt(alphabet.length)]);
+            }
+            String q = query.toString();
+            assertEquals(Set.copyOf(in.search(q)), Set.copyOf(index.search(q)), () -> "wrong results for " + q);
+            assertEquals(in.searchWithCount(q, 1).totalResults(), index.searchWithCount(q, 1).totalResults());
+            var all = index.searchWithCount(q, -1);
+            assertEquals(all.results().size(), all.totalResults(), () -> "wrong count for " + q);
+        }
+        assertEquals(in.computeCount(), index.computeCount());
+        assertThrows(IllegalArgumentException.class, () -> FMIndex.build(words, new int[1]));
+    }
+}
@@ -0,0 +1,72 @@
+/**
+ * Copyright 2012 Alessandro Bahgat Shehata
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.abahgat.suffixtree;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class IntSetTest {
+
+    @Test
+    public void testAdd() {
+        IntSet set = new IntSet();
+        for (int i = 0; i < 1000; i++) {
+            assertTrue(set.add(i * 7));
+        }
+        for (int i = 0; i < 1000; i++) {
+            assertFalse(set.add(i * 7));
+        }
+        assertEquals(1000, set.size());
+        for (int i = 0; i < 7000; i++) {
+            assertEquals(i % 7 == 0, set.contains(i));
+        }
+        assertTrue(set.contains((Object) 7));
+        assertFalse(set.contains((Object) "7"));
+    }
+
+    @Test
+    public void testInsertionOrder() {
+        IntSet set = new IntSet();
+        int[] values = { 42, -1, 7, 0, Integer.MAX_VALUE, Integer.MIN_VALUE, 7, 42 };
+        for (int value : values) {
+            set.add(value);
+        }
+        assertArrayEquals(new int[] { 42, -1, 7, 0, Integer.MAX_VALUE, Integer.MIN_VALUE }, set.toIntArray());
+
+        int position = 0;
+        for (int value : set) {
+            assertEquals(set.get(position++), value);
+        }
+        assertEquals(set.size(), position);
+    }
+
+    @Test
+    public void testCapacity() {
+        for (int capacity : new int[] { 0, 1, 3, 10, 64 }) {
+            IntSet set = new IntSet(capacity);
+            // grows past the capacity it was given
+            for (int i = 0; i < 100; i++) {
+                assertTrue(set.add(i * 31));
+                assertFalse(set.add(i * 31));
+            }
+            assertEquals(100, set.size());
+            assertEquals(31 * 99, set.get(99));
+        }
+    }
+}
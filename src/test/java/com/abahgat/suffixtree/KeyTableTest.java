@@ -0,0 +1,99 @@
+/**
+ * Copyright 2012 Alessandro Bahgat Shehata
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.abahgat.suffixtree;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class KeyTableTest {
+
+    @Test
+    public void testKeys() {
+        KeyTable table = new KeyTable();
+        table.add(3, "abc", 0);
+        table.add(5, "xy", 2.5f);
+        table.add(3, "de", 0);
+        assertEquals(2, table.size());
+        assertNull(table.onlyKey(3));
+        assertEquals("xy", table.onlyKey(5));
+        assertArrayEquals(new String[] { "abc", "de" }, table.keysOf(3));
+        assertEquals(0, table.keysOf(4).length);
+        assertEquals(2.5f, table.weightOf(5));
+        assertEquals(0, table.weightOf(3));
+
+        assertTrue(table.remove(3));
+        assertFalse(table.remove(3));
+        assertFalse(table.contains(3));
+        assertEquals(1, table.size());
+        assertEquals(2.5f, table.weightOf(5));
+        table.add(3, "fg", 1);
+        assertEquals("fg", table.onlyKey(3));
+        assertEquals(1, table.weightOf(3));
+
+        // many keys for the same index, moved around as other indexes are removed
+        for (int i = 0; i < 100; i++) {
+            table.add(7, "k" + i, 0);
+        }
+        assertTrue(table.remove(5));
+        int position = table.positionOf(7);
+        assertEquals(100, table.keyCountAt(position));
+        for (int i = 0; i < 100; i++) {
+            assertEquals("k" + i, table.keyAt(position, i));
+        }
+        assertEquals(100, table.keysOf(7).length);
+        assertEquals("k99", table.keysOf(7)[99]);
+    }
+
+    @Test
+    public void testChurn() {
+        Random random = new Random(5);
+        KeyTable table = new KeyTable();
+        Map<Integer, String> expected = new HashMap<>();
+        for (int round = 0; round < 20; round++) {
+            for (int i = 0; i < 5000; i++) {
+                int index = random.nextInt(20000);
+                if (expected.containsKey(index)) {
+                    assertTrue(table.remove(index));
+                    expected.remove(index);
+                } else {
+                    table.add(index, "k" + index, index % 3);
+                    expected.put(index, "k" + index);
+                }
+            }
+            assertEquals(expected.size(), table.size());
+            for (int index = 0; index < 20000; index++) {
+                assertEquals(expected.get(index), table.onlyKey(index));
+                assertEquals(expected.containsKey(index) ? index % 3 : 0, table.weightOf(index));
+            }
+            for (int position = 0; position < table.size(); position++) {
+                assertTrue(expected.containsKey(table.indexAt(position)));
+            }
+        }
+
+        // removing every index releases the table
+        for (int index : expected.keySet()) {
+            assertTrue(table.remove(index));
+        }
+        assertEquals(0, table.size());
+    }
+}
@@ -0,0 +1,165 @@
+/**
+ * Copyright 2012 Alessandro Bahgat Shehata
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.abahgat.suffixtree;
+
+import java.util.PrimitiveIterator;
+import java.util.Random;
+import java.util.TreeSet;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class PostingListTest {
+
+    @Test
+    public void testSingleValue() {
+        PostingList list = new PostingList(42);
+        assertEquals(1, list.size());
+        assertTrue(list.contains(42));
+        assertFalse(list.contains(41));
+        assertFalse(list.contains(43));
+
+        PrimitiveIterator.OfInt it = list.iterator();
+        assertEquals(42, it.nextInt());
+        assertFalse(it.hasNext());
+    }
+
+    @Test
+    public void testDenseValues() {
+        PostingList list = new PostingList(0);
+        for (int i = 1; i < 10000; i++) {
+            list.append(i);
+        }
+        list.compact();
+        assertEquals(10000, list.size());
+        for (int i = -5; i < 10005; i++) {
+            assertEquals(i >= 0 && i < 10000, list.contains(i));
+        }
+
+        PrimitiveIterator.OfInt it = list.iterator();
+        for (int i = 0; i < 10000; i++) {
+            assertEquals(i, it.nextInt());
+        }
+        assertFalse(it.hasNext());
+    }
+
+    @Test
+    public void testSparseValues() {
+        Random random = new Random(7);
+        TreeSet<Integer> expected = new TreeSet<>();
+        int value = -1000;
+        PostingList list = new PostingList(value);
+        expected.add(value);
+        for (int i = 0; i < 5000; i++) {
+            value += 1 + random.nextInt(i % 2 == 0 ? 10 : 1 << 20);
+            list.append(value);
+            expected.add(value);
+        }
+
+        for (int v : expected) {
+            assertTrue(list.contains(v));
+            assertEquals(expected.contains(v + 1), list.contains(v + 1));
+        }
+        assertFalse(list.contains(Integer.MIN_VALUE));
+        assertFalse(list.contains(Integer.MAX_VALUE));
+
+        PrimitiveIterator.OfInt it = list.iterator();
+        for (int v : expected) {
+            assertEquals(v, it.nextInt());
+        }
+        assertFalse(it.hasNext());
+    }
+
+    @Test
+    public void testAppendAfterCompact() {
+        PostingList list = new PostingList(1);
+        list.append(2);
+        list.compact();
+        for (int i = 3; i < 200; i++) {
+            list.append(i * 1000);
+            list.compact();
+        }
+        assertEquals(199, list.size());
+        assertTrue(list.contains(2));
+        assertTrue(list.contains(199000));
+        assertFalse(list.contains(3));
+    }
+
+    @Test
+    public void testInsert() {
+        Random random = new Random(3);
+        var expected = new TreeSet<Integer>();
+        PostingList list = null;
+        for (int i = 0; i < 2000; i++) {
+            int value = i % 3 == 0 ? random.nextInt(5000) : 5000 + i - random.nextInt(10);
+            if (!expected.add(value)) {
+                continue;
+            }
+            if (list == null) {
+                list = new PostingList(value);
+            } else {
+                list.insert(value);
+            }
+        }
+
+        assertEquals(expected.size(), list.size());
+        assertEquals(expected.last(), list.last());
+        var it = list.iterator();
+        for (int value : expected) {
+            assertEquals(value, it.nextInt());
+        }
+        assertFalse(it.hasNext());
+        for (int value = 0; value < 8000; value++) {
+            assertEquals(expected.contains(value), list.contains(value));
+        }
+    }
+
+    @Test
+    public void testRemove() {
+        Random random = new Random(5);
+        var expected = new TreeSet<Integer>();
+        PostingList list = new PostingList(0);
+        expected.add(0);
+        for (int i = 1; i < 1000; i++) {
+            int value = i * (1 + random.nextInt(300));
+            if (expected.add(value)) {
+                list.insert(value);
+            }
+        }
+        // removes values from anywhere in the list, the last one included
+        while (expected.size() > 1) {
+            int value = random.nextInt(4) == 0 ? expected.last() : expected.ceiling(random.nextInt(expected.last()));
+            expected.remove(value);
+            list.remove(value);
+            assertFalse(list.contains(value));
+            if (expected.size() % 97 == 0) {
+                assertEquals(expected.size(), list.size());
+                assertEquals(expected.last(), list.last());
+                var it = list.iterator();
+                for (int v : expected) {
+                    assertTrue(list.contains(v));
+                    assertEquals(v, it.nextInt());
+                }
+                assertFalse(it.hasNext());
+            }
+        }
+        assertEquals(1, list.size());
+        assertEquals(expected.first(), list.last());
+        list.append(expected.first() + 1);
+        assertTrue(list.contains(expected.first() + 1));
+    }
+}
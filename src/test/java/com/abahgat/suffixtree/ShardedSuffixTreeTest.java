@@ -0,0 +1,110 @@
+/**
+ * Copyright 2012 Alessandro Bahgat Shehata
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.abahgat.suffixtree;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ShardedSuffixTreeTest {
+
+    @Test
+    public void testConcurrentPuts() throws Exception {
+        Random random = new Random(29);
+        List<String> words = new ArrayList<>();
+        for (int i = 0; i < 4000; ++i) {
+            StringBuilder word = new StringBuilder();
+            int length = 1 + random.nextInt(10);
+            for (int j = 0; j < length; ++j) {
+                word.append((char) ('a' + random.nextInt(3)));
+            }
+            words.add(word.toString());
+        }
+
+        var tree = new ShardedSuffixTree(3);
+        int threads = 4;
+        ExecutorService writers = Executors.newFixedThreadPool(threads);
+        List<Future<?>> done = new ArrayList<>();
+        for (int t = 0; t < threads; ++t) {
+            int first = t;
+            done.add(writers.submit(() -> {
+                for (int i = first; i < words.size(); i += threads) {
+                    tree.put(words.get(i), i);
+                }
+            }));
+        }
+        for (Future<?> f : done) {
+            f.get();
+        }
+        writers.shutdown();
+
+        assertEquals(words.size(), tree.computeCount());
+        for (int i = 0; i < 300; ++i) {
+            StringBuilder query = new StringBuilder();
+            int length = 1 + random.nextInt(5);
+            for (int j = 0; j < length; ++j) {
+                query.append((char) ('a' + random.nextInt(3)));
+            }
+            Set<Integer> expected = new HashSet<>();
+            for (int j = 0; j < words.size(); ++j) {
+                if (words.get(j).contains(query)) {
+                    expected.add(j);
+                }
+            }
+            assertEquals(expected, Set.copyOf(tree.search(query.toString())), () -> "wrong results for " + query);
+            assertEquals(expected.size(), tree.searchInts(query.toString()).length);
+            assertEquals(expected.size(), tree.searchWithCount(query.toString(), 1).totalResults());
+        }
+    }
+
+    @Test
+    public void testLimits() {
+        var tree = new ShardedSuffixTree(4);
+        for (int i = 0; i < 10; ++i) {
+            tree.put("banana" + i, i);
+        }
+
+        assertEquals(10, tree.search("ana").size());
+        assertEquals(7, tree.search("ana", 7).size());
+        assertEquals(3, tree.searchInts("nan", 3).length);
+        int[] count = { 0 };
+        tree.search("ban", 5, index -> count[0]++);
+        assertEquals(5, count[0]);
+
+        GeneralizedSuffixTree.ResultInfo info = tree.searchWithCount("na", 2);
+        assertEquals(2, info.results().size());
+        assertEquals(10, info.totalResults());
+        assertTrue(tree.search("nab").isEmpty());
+
+        for (int i = 10; i < 20; ++i) {
+            tree.put("bandana" + i, i, i % 7);
+        }
+        assertArrayEquals(new int[] { 13 }, tree.searchTopK("dana1", 1));
+        assertEquals(List.of(6f, 5f, 5f), Arrays.stream(tree.searchTopK("dana", 3)).mapToObj(tree::getWeight).toList());
+        assertThrows(IllegalArgumentException.class, () -> new ShardedSuffixTree(0));
+    }
+}
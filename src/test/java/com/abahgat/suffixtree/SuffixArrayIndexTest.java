@@ -0,0 +1,103 @@
+/**
+ * Copyright 2012 Alessandro Bahgat Shehata
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.abahgat.suffixtree;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.IntStream;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static com.abahgat.suffixtree.Utils.getSubstrings;
+
+public class SuffixArrayIndexTest {
+
+    @Test
+    public void testSais() {
+        Random random = new Random(31);
+        for (int t = 0; t < 500; ++t) {
+            int upper = 1 + random.nextInt(t % 2 == 0 ? 2 : 20);
+            int[] s = random.ints(random.nextInt(60), 0, upper + 1).toArray();
+            Integer[] expected = IntStream.range(0, s.length).boxed().toArray(Integer[]::new);
+            Arrays.sort(expected, Comparator.comparing(i -> Arrays.copyOfRange(s, i, s.length), Arrays::compare));
+            assertArrayEquals(Arrays.stream(expected).mapToInt(i -> i).toArray(), SuffixArrays.sais(s, upper),
+                    () -> "wrong suffix array for " + Arrays.toString(s));
+        }
+    }
+
+    @Test
+    public void testSameResults() {
+        String[] words = new String[] { "cacaor", "caricato", "cacato", "cacata", "caricata", "cacao", "banana", "", "ca" };
+        GeneralizedSuffixTree in = new GeneralizedSuffixTree();
+        for (int i = 0; i < words.length; ++i) {
+            in.put(words[i], i);
+        }
+        SuffixArrayIndex index = SuffixArrayIndex.build(List.of(words));
+
+        for (String word : words) {
+            for (String s : getSubstrings(word)) {
+                assertEquals(Set.copyOf(in.search(s)), Set.copyOf(index.search(s)), () -> "wrong results for " + s);
+                assertEquals(in.searchWithCount(s, 2).totalResults(), index.searchWithCount(s, 2).totalResults());
+                assertEquals(Math.min(2, in.search(s).size()), index.searchInts(s, 2).length);
+            }
+        }
+        assertTrue(index.search("aoca").isEmpty());
+        assertTrue(index.search("").isEmpty());
+        assertTrue(index.search("zzz").isEmpty());
+        assertEquals(0, index.searchWithCount("cacaoo", 10).totalResults());
+        assertEquals(in.computeCount(), index.computeCount());
+    }
+
+    @Test
+    public void testRandomWords() {
+        String[] alphabet = { "a", "b", "c", "\0", "😀" };
+        Random random = new Random(37);
+        List<String> words = new ArrayList<>();
+        int[] indexes = new int[800];
+        GeneralizedSuffixTree in = new GeneralizedSuffixTree();
+        for (int i = 0; i < indexes.length; ++i) {
+            StringBuilder word = new StringBuilder();
+            int length = random.nextInt(12);
+            for (int j = 0; j < length; ++j) {
+                word.append(alphabet[random.nextInt(alphabet.length)]);
+            }
+            words.add(word.toString());
+            // repeated and out of order indexes
+            indexes[i] = random.nextInt(600);
+            in.put(word.toString(), indexes[i]);
+        }
+        SuffixArrayIndex index = SuffixArrayIndex.build(words, indexes);
+
+        for (int i = 0; i < 1000; ++i) {
+            StringBuilder query = new StringBuilder();
+            int length = 1 + random.nextInt(5);
+            for (int j = 0; j < length; ++j) {
+                query.append(alphabet[random.nextInt(alphabet.length)]);
+            }
+            String q = query.toString();
+            assertEquals(Set.copyOf(in.search(q)), Set.copyOf(index.search(q)), () -> "wrong results for " + q);
+            assertEquals(in.searchWithCount(q, 1).totalResults(), index.searchWithCount(q, 1).totalResults());
+        }
+        assertEquals(in.computeCount(), index.computeCount());
+        assertThrows(IllegalArgumentException.class, () -> SuffixArrayIndex.build(words, new int[1]));
+    }
+}
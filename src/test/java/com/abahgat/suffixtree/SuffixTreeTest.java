@@ -15,13 +15,26 @@
  */
 package com.abahgat.suffixtree;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PrimitiveIterator;
+import java.util.Random;
 import java.util.Set;
+import java.util.regex.Pattern;
 import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static com.abahgat.suffixtree.Utils.getSubstrings;
 
@@ -225,6 +238,331 @@ public class SuffixTreeTest {
         assertEmpty(in.search("aoca"));
     }
 
+    @Test
+    public void testResultCountAfterPut() {
+        GeneralizedSuffixTree in = new GeneralizedSuffixTree();
+        String[] words = new String[] { "cacaor", "caricato", "cacato", "cacata", "caricata", "cacao", "banana" };
+        for (int i = 0; i < words.length; ++i) {
+            in.put(words[i], i);
+            testResultsCount(in.getRoot());
+            assertEquals(i + 1, in.computeCount());
+        }
+        // indexes may be repeated, and must be counted once
+        in.put("cacao", words.length - 1);
+        in.put("bacon", words.length - 1);
+        testResultsCount(in.getRoot());
+
+        assertEquals(3, in.searchWithCount("ca", 3).results().size());
+        assertEquals(7, in.searchWithCount("ca", 3).totalResults());
+        assertEquals(1, in.searchWithCount("ban", -1).totalResults());
+        assertEquals(1, in.searchWithCount("aco", -1).totalResults());
+        assertEquals(0, in.searchWithCount("zzz", -1).totalResults());
+    }
+
+    @Test
+    public void testRandomWords() {
+        Random random = new Random(42);
+        GeneralizedSuffixTree in = new GeneralizedSuffixTree();
+        List<String> words = new ArrayList<>();
+        for (int i = 0; i < 300; ++i) {
+            StringBuilder word = new StringBuilder();
+            int length = 1 + random.nextInt(12);
+            for (int j = 0; j < length; ++j) {
+                word.append((char) ('a' + random.nextInt(3)));
+            }
+            words.add(word.toString());
+            in.put(word.toString(), i);
+        }
+        testResultsCount(in.getRoot());
+
+        for (int i = 0; i < 500; ++i) {
+            StringBuilder query = new StringBuilder();
+            int length = 1 + random.nextInt(6);
+            for (int j = 0; j < length; ++j) {
+                query.append((char) ('a' + random.nextInt(4)));
+            }
+            Set<Integer> expected = new HashSet<>();
+            for (int j = 0; j < words.size(); ++j) {
+                if (words.get(j).contains(query)) {
+                    expected.add(j);
+                }
+            }
+            assertEquals(expected, Set.copyOf(in.search(query.toString())), () -> "wrong results for " + query);
+            assertEquals(expected.size(), in.searchWithCount(query.toString(), 1).totalResults());
+        }
+    }
+
+    @Test
+    public void testRandomWordsWithSupplementaryCharacters() {
+        String[] alphabet = { "a", "b", "😀", "😁" };
+        Random random = new Random(7);
+        GeneralizedSuffixTree in = new GeneralizedSuffixTree();
+        List<String> words = new ArrayList<>();
+        for (int i = 0; i < 300; ++i) {
+            StringBuilder word = new StringBuilder();
+            int length = 1 + random.nextInt(10);
+            for (int j = 0; j < length; ++j) {
+                word.append(alphabet[random.nextInt(alphabet.length)]);
+            }
+            words.add(word.toString());
+            in.put(word.toString(), i);
+        }
+        testResultsCount(in.getRoot());
+
+        for (int i = 0; i < 500; ++i) {
+            StringBuilder query = new StringBuilder();
+            int length = 1 + random.nextInt(5);
+            for (int j = 0; j < length; ++j) {
+                query.append(alphabet[random.nextInt(alphabet.length)]);
+            }
+            Set<Integer> expected = new HashSet<>();
+            for (int j = 0; j < words.size(); ++j) {
+                if (words.get(j).contains(query)) {
+                    expected.add(j);
+                }
+            }
+            assertEquals(expected, Set.copyOf(in.search(query.toString())), () -> "wrong results for " + query);
+        }
+    }
+
+    @Test
+    public void testLongKeys() {
+        Random random = new Random(11);
+        GeneralizedSuffixTree in = new GeneralizedSuffixTree();
+        String first = randomWord(random, 50_000, 4);
+        String second = randomWord(random, 50_000, 4);
+        in.put(first, 0);
+        in.put(second, 1);
+        testResultsCount(in.getRoot());
+
+        for (int i = 0; i < 200; ++i) {
+            String key = random.nextBoolean() ? first : second;
+            int start = random.nextInt(key.length());
+            String query = key.substring(start, Math.min(key.length(), start + 1 + random.nextInt(40)));
+            Set<Integer> expected = new HashSet<>();
+            if (first.contains(query)) {
+                expected.add(0);
+            }
+            if (second.contains(query)) {
+                expected.add(1);
+            }
+            assertEquals(expected, Set.copyOf(in.search(query)), () -> "wrong results for " + query);
+        }
+        assertEquals(Set.of(0), Set.copyOf(in.search(first)));
+        assertTrue(in.search(first + "a").isEmpty());
+    }
+
+    @Test
+    public void testOutOfOrderIndexes() {
+        Random random = new Random(13);
+        GeneralizedSuffixTree in = new GeneralizedSuffixTree();
+        List<String> words = new ArrayList<>();
+        List<Integer> indexes = new ArrayList<>();
+        for (int i = 0; i < 400; ++i) {
+            String word = randomWord(random, 1 + random.nextInt(10), 3);
+            // mostly slightly out of order, sometimes far behind or re-used
+            int index = i % 50 == 0 ? random.nextInt(i + 1) : Math.max(0, i - random.nextInt(5));
+            words.add(word);
+            indexes.add(index);
+            in.put(word, index);
+
+            if (i % 40 == 0) {
+                testExactCounts(in.getRoot());
+            }
+        }
+        testExactCounts(in.getRoot());
+
+        for (int i = 0; i < 500; ++i) {
+            String query = randomWord(random, 1 + random.nextInt(5), 3);
+            Set<Integer> expected = new HashSet<>();
+            for (int j = 0; j < words.size(); ++j) {
+                if (words.get(j).contains(query)) {
+                    expected.add(indexes.get(j));
+                }
+            }
+            assertEquals(expected, Set.copyOf(in.search(query)), () -> "wrong results for " + query);
+            assertEquals(expected.size(), in.searchWithCount(query, 1).totalResults());
+        }
+        assertEquals(Set.copyOf(indexes).size(), in.computeCount());
+    }
+
+    @Test
+    public void testOutOfOrderDocuments() {
+        Random random = new Random(19);
+        GeneralizedSuffixTree in = new GeneralizedSuffixTree();
+        Map<Integer, List<String>> documents = new HashMap<>();
+        for (int d = 0; d < 60; ++d) {
+            // the keys of a document are added one after the other, adjacent ones swapped
+            int index = d ^ 1;
+            for (int k = 0; k < 30; ++k) {
+                String word = randomWord(random, 1 + random.nextInt(8), 3);
+                in.put(word, index);
+                documents.computeIfAbsent(index, i -> new ArrayList<>()).add(word);
+            }
+            if (d % 10 == 0) {
+                // a document far behind, with a key interleaved
+                int old = random.nextInt(d + 1) ^ 1;
+                String word = randomWord(random, 1 + random.nextInt(8), 3);
+                in.put(word, old);
+                documents.computeIfAbsent(old, i -> new ArrayList<>()).add(word);
+            }
+            if (d % 15 == 0) {
+                testExactCounts(in.getRoot());
+            }
+        }
+        testExactCounts(in.getRoot());
+        assertSameResults(documents, in, random);
+    }
+
+    @Test
+    public void testRemove() {
+        Random random = new Random(17);
+        GeneralizedSuffixTree in = new GeneralizedSuffixTree();
+        Map<Integer, List<String>> live = new HashMap<>();
+        int nodesBefore = 0;
+        for (int i = 0; i < 1500; ++i) {
+            int index = i;
+            if (i % 50 == 0 && !live.isEmpty()) {
+                // re-use a removed index
+                index = random.nextInt(i);
+                in.remove(index);
+                live.remove(index);
+            }
+            String word = randomWord(random, 1 + random.nextInt(10), 3);
+            in.put(word, index);
+            live.computeIfAbsent(index, k -> new ArrayList<>()).add(word);
+            if (i % 7 == 0) {
+                // indexes with several keys are removed under all of them
+                word = randomWord(random, 1 + random.nextInt(10), 3);
+                in.put(word, index);
+                live.get(index).add(word);
+            }
+            if (i == 999) {
+                nodesBefore = countNodes(in.getRoot());
+            }
+            if (i >= 1000) {
+                // remove half of the indexes, a few at a time, while adding new ones
+                for (int j = 0; j < 2; ++j) {
+                    int removed = random.nextInt(1000);
+                    in.remove(removed);
+                    live.remove(removed);
+                }
+            }
+            if (i % 100 == 0) {
+                assertSameResults(live, in, random);
+            }
+        }
+        assertSameResults(live, in, random);
+
+        // removed indexes are gone from every node, and counts were updated exactly
+        assertEquals(live.keySet(), Set.copyOf(in.getRoot().getData().toModifiableSet()));
+        testExactCounts(in.getRoot());
+        assertTrue(countNodes(in.getRoot()) < nodesBefore);
+        // removed indexes are dropped from the keys and weights of the tree
+        assertEquals(live.size(), in.getKeyTable().size());
+
+        for (int index : List.copyOf(live.keySet())) {
+            in.remove(index);
+        }
+        assertEquals(0, in.computeCount());
+        assertTrue(in.search("a").isEmpty());
+        assertEquals(1, countNodes(in.getRoot()));
+        assertEquals(0, in.getKeyTable().size());
+        in.put("cacao", 3);
+        assertEquals(List.of(3), List.copyOf(in.search("ca")));
+    }
+
+    private static void assertSameResults(Map<Integer, List<String>> live, GeneralizedSuffixTree in, Random random) {
+        for (int i = 0; i < 100; ++i) {
+            String query = randomWord(random, 1 + random.nextInt(4), 3);
+            Set<Integer> expected = new HashSet<>();
+            Set<Integer> prefixed = new HashSet<>();
+            Set<Integer> suffixed = new HashSet<>();
+            live.forEach((index, words) -> {
+                if (words.stream().anyMatch(word -> word.contains(query))) {
+                    expected.add(index);
+                }
+                if (words.stream().anyMatch(word -> word.startsWith(query))) {
+                    prefixed.add(index);
+                }
+                if (words.stream().anyMatch(word -> word.endsWith(query))) {
+                    suffixed.add(index);
+                }
+            });
+            assertEquals(expected, Set.copyOf(in.search(query)), () -> "wrong results for " + query);
+            assertEquals(expected.size(), in.searchWithCount(query, 1).totalResults());
+            assertEquals(Math.min(2, expected.size()), in.searchInts(query, 2).length);
+            // the keys ending in each node are kept along with its payload
+            assertEquals(prefixed, Set.copyOf(in.searchPrefix(query)), () -> "wrong prefix results for " + query);
+            assertEquals(suffixed, Set.copyOf(in.searchSuffix(query)), () -> "wrong suffix results for " + query);
+        }
+        assertEquals(live.size(), in.computeCount());
+    }
+
+    private static int countNodes(Node n) {
+        int count = 1;
+        for (Edge e : n.getEdges().values()) {
+            count += countNodes(e.getDest());
+        }
+        return count;
+    }
+
+    @Test
+    public void testSnapshot() throws IOException {
+        Random random = new Random(5);
+        GeneralizedSuffixTree in = new GeneralizedSuffixTree();
+        for (int i = 0; i < 200; ++i) {
+            in.put(randomWord(random, 1 + random.nextInt(12), 3), i);
+        }
+        in.put("こんにちは😀", 200);
+
+        var out = new ByteArrayOutputStream();
+        in.writeTo(out);
+        GeneralizedSuffixTree restored = GeneralizedSuffixTree.readFrom(new ByteArrayInputStream(out.toByteArray()));
+        testResultsCount(restored.getRoot());
+        assertEquals(in.computeCount(), restored.computeCount());
+        assertEquals(Set.of(200), Set.copyOf(restored.search("ちは😀")));
+
+        // the restored tree must keep growing exactly as the original one
+        for (int i = 201; i < 300; ++i) {
+            String word = randomWord(random, 1 + random.nextInt(12), 3);
+            in.put(word, i);
+            restored.put(word, i);
+        }
+        testResultsCount(restored.getRoot());
+        for (int i = 0; i < 300; ++i) {
+            String query = randomWord(random, 1 + random.nextInt(5), 3);
+            assertEquals(Set.copyOf(in.search(query)), Set.copyOf(restored.search(query)));
+            assertEquals(in.searchWithCount(query, 1).totalResults(), restored.searchWithCount(query, 1).totalResults());
+        }
+        restored.put("late", 10);
+        assertTrue(restored.search("late").contains(10));
+    }
+
+    @Test
+    public void testInvalidSnapshot() throws IOException {
+        assertThrows(IOException.class, () -> GeneralizedSuffixTree.readFrom(new ByteArrayInputStream(new byte[] { 1, 2, 3, 4 })));
+
+        GeneralizedSuffixTree in = new GeneralizedSuffixTree();
+        in.put("banana", 0);
+        var out = new ByteArrayOutputStream();
+        in.writeTo(out);
+        byte[] bytes = out.toByteArray();
+        assertThrows(IOException.class, () -> GeneralizedSuffixTree.readFrom(new ByteArrayInputStream(Arrays.copyOf(bytes, bytes.length - 1))));
+    }
+
+    /**
+     * Checks that the counts and largest indexes of the subtree of <tt>n</tt> are exact
+     */
+    private void testExactCounts(Node n) {
+        IntSet all = n.getData(-1);
+        assertEquals(all.size(), n.getResultCount());
+        assertEquals(all.stream().mapToInt(Integer::intValue).max().orElse(n.getMaxIndex()), n.getMaxIndex());
+        for (Edge e : n.getEdges().values()) {
+            testExactCounts(e.getDest());
+        }
+    }
+
     private void testResultsCount(Node n) {
         for (Edge e : n.getEdges().values()) {
             assertEquals(n.getData(-1).size(), n.getResultCount());
@@ -232,6 +570,495 @@ public class SuffixTreeTest {
         }
     }
 
+    @Test
+    public void testSearchInts() {
+        GeneralizedSuffixTree in = new GeneralizedSuffixTree();
+        String[] words = new String[] { "cacaor", "caricato", "cacato", "cacata", "caricata", "cacao", "banana" };
+        for (int i = 0; i < words.length; ++i) {
+            in.put(words[i], i);
+        }
+
+        for (String word : words) {
+            for (String s : getSubstrings(word)) {
+                int[] ints = in.searchInts(s);
+                Collection<Integer> expected = in.search(s);
+                assertEquals(expected.size(), ints.length);
+                for (int index : ints) {
+                    assertTrue(expected.contains(index));
+                }
+            }
+        }
+
+        assertEquals(4, in.searchInts("ca", 4).length);
+        assertEquals(0, in.searchInts("aoca").length);
+    }
+
+    @Test
+    public void testSearchResultsAreModifiable() {
+        GeneralizedSuffixTree in = new GeneralizedSuffixTree();
+        String[] words = new String[] { "cacaor", "caricato", "cacato", "banana" };
+        for (int i = 0; i < words.length; ++i) {
+            in.put(words[i], i);
+        }
+
+        Collection<Integer> found = in.search("ca");
+        assertEquals(Set.of(0, 1, 2), found);
+        found.removeAll(List.of(0));
+        found.retainAll(List.of(1, 3));
+        assertEquals(Set.of(1), found);
+        var it = found.iterator();
+        it.next();
+        it.remove();
+        assertTrue(found.isEmpty());
+        // the tree does not share its results
+        assertEquals(Set.of(0, 1, 2), in.search("ca"));
+
+        Collection<Integer> none = in.search("zz");
+        none.add(7);
+        assertEquals(Set.of(7), none);
+        in.searchPrefix("ca").clear();
+        in.searchWithCount("a", 2).results().clear();
+    }
+
+    @Test
+    public void testSearchAll() {
+        Random random = new Random(19);
+        GeneralizedSuffixTree in = new GeneralizedSuffixTree();
+        for (int i = 0; i < 500; ++i) {
+            String word = randomWord(random, 1 + random.nextInt(15), 3);
+            in.put(i % 7 == 0 ? word + "😀" + word : word, i);
+        }
+        List<String> queries = new ArrayList<>();
+        for (int i = 0; i < 2000; ++i) {
+            queries.add(randomWord(random, random.nextInt(8), 3) + (i % 11 == 0 ? "😀" : ""));
+        }
+        queries.add("");
+        queries.add("zzz");
+
+        int[][] all = in.searchAll(queries, -1);
+        int[][] some = in.searchAll(queries, 2);
+        assertEquals(queries.size(), all.length);
+        for (int i = 0; i < queries.size(); ++i) {
+            String query = queries.get(i);
+            assertEquals(Set.copyOf(in.search(query)), Set.copyOf(Arrays.stream(all[i]).boxed().toList()),
+                    () -> "wrong results for " + query);
+            assertEquals(Math.min(2, all[i].length), some[i].length);
+        }
+    }
+
+    @Test
+    public void testCache() {
+        Random random = new Random(23);
+        GeneralizedSuffixTree in = new GeneralizedSuffixTree();
+        GeneralizedSuffixTree uncached = new GeneralizedSuffixTree();
+        in.enableCache(200);
+        for (int i = 0; i < 2000; ++i) {
+            if (i % 3 == 0) {
+                String word = randomWord(random, 1 + random.nextInt(8), 3);
+                in.put(word, i);
+                uncached.put(word, i);
+            }
+            if (i % 101 == 0) {
+                in.remove(i / 2);
+                uncached.remove(i / 2);
+            }
+            String query = randomWord(random, 1 + random.nextInt(3), 3);
+            int limit = random.nextBoolean() ? -1 : 3;
+            Collection<Integer> expected = uncached.search(query, limit);
+            Collection<Integer> found = in.search(query, limit);
+            // cached results are the same kind of set, equal to the uncached ones
+            assertEquals(expected.getClass(), found.getClass());
+            assertEquals(expected, found, () -> "wrong results for " + query);
+            assertEquals(Set.copyOf(found), found);
+            assertEquals(expected.hashCode(), found.hashCode());
+            assertEquals(Set.copyOf(uncached.search(query)), Set.copyOf(Arrays.stream(in.searchInts(query)).boxed().toList()));
+        }
+
+        GeneralizedSuffixTree.CacheStats stats = in.cacheStats();
+        assertTrue(stats.hits() > 0);
+        assertTrue(stats.misses() > 0);
+        assertTrue(stats.evictions() > 0);
+        assertTrue(stats.invalidations() > 0);
+        assertTrue(stats.weight() <= 200);
+
+        in.disableCache();
+        assertEquals(0, in.cacheStats().size());
+        assertThrows(IllegalArgumentException.class, () -> in.enableCache(0));
+    }
+
+    @Test
+    public void testPrefixAndSuffix() throws IOException {
+        Random random = new Random(29);
+        List<String> words = new ArrayList<>();
+        GeneralizedSuffixTree in = new GeneralizedSuffixTree();
+        for (int i = 0; i < 600; ++i) {
+            String word = randomWord(random, 1 + random.nextInt(10), 3) + (i % 13 == 0 ? "😀" : "");
+            words.add(word);
+            // out of order every now and then
+            in.put(word, i % 17 == 0 ? i / 2 : i);
+        }
+        in.remove(100);
+        var out = new ByteArrayOutputStream();
+        in.writeTo(out);
+        GeneralizedSuffixTree restored = GeneralizedSuffixTree.readFrom(new ByteArrayInputStream(out.toByteArray()));
+        GeneralizedSuffixTree bulk = GeneralizedSuffixTree.bulkLoad(words);
+
+        for (int i = 0; i < 500; ++i) {
+            String query = randomWord(random, random.nextInt(5), 3) + (i % 7 == 0 ? "😀" : "");
+            Set<Integer> prefixes = new HashSet<>();
+            Set<Integer> suffixes = new HashSet<>();
+            Set<Integer> bulkPrefixes = new HashSet<>();
+            for (int j = 0; j < words.size(); ++j) {
+                int index = j % 17 == 0 ? j / 2 : j;
+                if (!query.isEmpty() && words.get(j).startsWith(query)) {
+                    bulkPrefixes.add(j);
+                    if (index != 100) {
+                        prefixes.add(index);
+                    }
+                }
+                if (!query.isEmpty() && words.get(j).endsWith(query) && index != 100) {
+                    suffixes.add(index);
+                }
+            }
+            assertEquals(prefixes, Set.copyOf(in.searchPrefix(query)), () -> "wrong prefix results for " + query);
+            assertEquals(suffixes, Set.copyOf(in.searchSuffix(query)), () -> "wrong suffix results for " + query);
+            assertEquals(prefixes, Set.copyOf(restored.searchPrefix(query)));
+            assertEquals(suffixes, Set.copyOf(restored.searchSuffix(query)));
+            assertEquals(bulkPrefixes, Set.copyOf(bulk.searchPrefix(query)));
+            assertEquals(Math.min(1, suffixes.size()), in.searchSuffix(query, 1).size());
+        }
+    }
+
+    @Test
+    public void testTopK() throws IOException {
+        Random random = new Random(41);
+        GeneralizedSuffixTree in = new GeneralizedSuffixTree();
+        // distinct weights, some of them negative
+        float[] weights = new float[500];
+        for (int i = 0; i < weights.length; ++i) {
+            weights[i] = (i * 7919 % weights.length) - 100;
+        }
+        for (int i = 0; i < 800; ++i) {
+            String word = randomWord(random, 1 + random.nextInt(10), 3);
+            // repeated and out of order indexes, the last ones without a weight
+            int index = random.nextInt(weights.length);
+            if (index < 450) {
+                in.put(word, index, weights[index]);
+            } else {
+                weights[index] = 0;
+                in.put(word, index);
+            }
+        }
+        in.remove(7);
+        in.remove(42);
+        var out = new ByteArrayOutputStream();
+        in.writeTo(out);
+        GeneralizedSuffixTree restored = GeneralizedSuffixTree.readFrom(new ByteArrayInputStream(out.toByteArray()));
+
+        for (int i = 0; i < 300; ++i) {
+            String query = randomWord(random, 1 + random.nextInt(4), 3);
+            int k = random.nextInt(12) - 1;
+            Collection<Integer> matches = in.search(query);
+            List<Float> all = new ArrayList<>();
+            for (int index : matches) {
+                all.add(weights[index]);
+            }
+            all.sort((x, y) -> Float.compare(y, x));
+            List<Float> top = all.subList(0, k < 0 ? all.size() : Math.min(k, all.size()));
+            for (GeneralizedSuffixTree tree : List.of(in, restored)) {
+                int[] found = tree.searchTopK(query, k);
+                List<Float> foundWeights = new ArrayList<>();
+                for (int index : found) {
+                    assertTrue(matches.contains(index), () -> "unexpected index " + index);
+                    foundWeights.add(tree.getWeight(index));
+                }
+                assertEquals(top, foundWeights, () -> "wrong top results for " + query);
+            }
+        }
+
+        assertThrows(IllegalArgumentException.class, () -> in.put("cab", 3, weights[3] + 1));
+        assertThrows(IllegalArgumentException.class, () -> in.put("cab", 3, Float.NaN));
+        // an empty key could not carry the weight
+        assertThrows(IllegalArgumentException.class, () -> in.put("", 600, 5));
+        assertEquals(0, in.getWeight(600));
+        in.put("cab", 3, weights[3]);
+        // a removed index can be given a different weight
+        in.put("cabbage", 7, 1000);
+        assertEquals(7, in.searchTopK("ab", 1)[0]);
+        assertEquals(0, in.searchTopK("zzz", 1).length);
+    }
+
+    @Test
+    public void testOccurrences() throws IOException {
+        Random random = new Random(43);
+        List<String> words = new ArrayList<>();
+        GeneralizedSuffixTree in = new GeneralizedSuffixTree();
+        for (int i = 0; i < 600; ++i) {
+            String word = randomWord(random, 1 + random.nextInt(12), 3) + (i % 11 == 0 ? "😀a" : "");
+            words.add(word);
+            // some indexes are added with several keys
+            in.put(word, i % 5 == 0 ? i / 2 : i);
+        }
+        in.remove(101);
+        // an index with several keys, removed and added again
+        in.remove(2);
+        in.put(words.get(5), 2);
+        var out = new ByteArrayOutputStream();
+        in.writeTo(out);
+        GeneralizedSuffixTree restored = GeneralizedSuffixTree.readFrom(new ByteArrayInputStream(out.toByteArray()));
+        GeneralizedSuffixTree bulk = GeneralizedSuffixTree.bulkLoad(words);
+
+        for (int i = 0; i < 300; ++i) {
+            String query = randomWord(random, 1 + random.nextInt(4), 3) + (i % 9 == 0 ? "😀" : "");
+            Set<String> expected = new HashSet<>();
+            Set<String> bulkExpected = new HashSet<>();
+            for (int j = 0; j < words.size(); ++j) {
+                int index = j % 5 == 0 ? j / 2 : j;
+                String word = words.get(j);
+                for (int offset = word.indexOf(query); offset >= 0; offset = word.indexOf(query, offset + 1)) {
+                    bulkExpected.add(j + ":" + word + ":" + offset);
+                    if (index != 101 && (index != 2 || j == 5)) {
+                        expected.add(index + ":" + word + ":" + offset);
+                    }
+                }
+            }
+            assertEquals(expected, occurrences(in.searchOccurrences(query)), () -> "wrong occurrences of " + query);
+            assertEquals(expected, occurrences(restored.searchOccurrences(query)));
+            assertEquals(bulkExpected, occurrences(bulk.searchOccurrences(query)));
+            assertEquals(Math.min(2, expected.size()), in.searchOccurrences(query, 2).size());
+        }
+        assertEquals(0, in.searchOccurrences("").size());
+        assertThrows(IndexOutOfBoundsException.class, () -> in.searchOccurrences("zzz").index(0));
+
+        // two keys of the same index with the word at the same offset
+        GeneralizedSuffixTree shared = new GeneralizedSuffixTree();
+        shared.put("xab", 1);
+        shared.put("yab", 1);
+        shared.put("zabab", 2);
+        assertEquals(Set.of("1:xab:1", "1:yab:1", "2:zabab:1", "2:zabab:3"), occurrences(shared.searchOccurrences("ab")));
+        shared.remove(2);
+        assertEquals(Set.of("1:xab:1", "1:yab:1"), occurrences(shared.searchOccurrences("ab")));
+        assertEquals(Set.of("1:yab:0"), occurrences(shared.searchOccurrences("ya")));
+    }
+
+    private static Set<String> occurrences(Occurrences found) {
+        Set<String> triples = new HashSet<>();
+        for (int i = 0; i < found.size(); ++i) {
+            String occurrence = found.index(i) + ":" + found.key(i) + ":" + found.offset(i);
+            assertTrue(triples.add(occurrence), () -> "occurrence " + occurrence + " reported twice");
+        }
+        return triples;
+    }
+
+    @Test
+    public void testSearchApprox() {
+        Random random = new Random(47);
+        List<String> words = new ArrayList<>();
+        GeneralizedSuffixTree in = new GeneralizedSuffixTree();
+        for (int i = 0; i < 500; ++i) {
+            String word = randomWord(random, 1 + random.nextInt(10), 4) + (i % 13 == 0 ? "😀" : "");
+            words.add(word);
+            in.put(word, i);
+        }
+        in.remove(3);
+
+        for (int i = 0; i < 300; ++i) {
+            String query = randomWord(random, 1 + random.nextInt(5), 4) + (i % 7 == 0 ? "😀" : "");
+            int maxEdits = random.nextInt(3);
+            Map<Integer, Integer> distances = new HashMap<>();
+            for (int j = 0; j < words.size(); ++j) {
+                int distance = substringDistance(query, words.get(j));
+                if (distance <= maxEdits && j != 3) {
+                    distances.put(j, distance);
+                }
+            }
+            Collection<Integer> all = in.searchApprox(query, maxEdits, -1);
+            assertEquals(distances.keySet(), Set.copyOf(all),
+                    () -> "wrong results for " + query + " within " + maxEdits);
+            // matches come by increasing distance
+            int previous = 0;
+            for (int index : all) {
+                assertTrue(distances.get(index) >= previous, () -> "matches out of order for " + query);
+                previous = distances.get(index);
+            }
+
+            // limited results are the closest ones
+            Collection<Integer> some = in.searchApprox(query, maxEdits, 5);
+            assertEquals(Math.min(5, distances.size()), some.size());
+            int farthest = some.stream().mapToInt(distances::get).max().orElse(0);
+            distances.forEach((index, distance) -> assertTrue(distance >= farthest || some.contains(index),
+                    () -> "closer match " + index + " missing for " + query));
+        }
+        assertEquals(Set.copyOf(in.search("ab")), Set.copyOf(in.searchApprox("ab", 0, -1)));
+        assertEquals(words.size() - 1, in.searchApprox("abc", 3, -1).size());
+        assertThrows(IllegalArgumentException.class, () -> in.searchApprox("ab", -1, -1));
+    }
+
+    /**
+     * Returns the smallest edit distance between <tt>word</tt> and a substring of <tt>text</tt>
+     */
+    private static int substringDistance(String word, String text) {
+        int[] p = word.codePoints().toArray();
+        int[] t = text.codePoints().toArray();
+        int[] row = new int[p.length + 1];
+        Arrays.setAll(row, j -> j);
+        int best = row[p.length];
+        for (int c : t) {
+            int diagonal = row[0];
+            // a substring can start anywhere
+            row[0] = 0;
+            for (int j = 1; j <= p.length; ++j) {
+                int above = row[j];
+                row[j] = Math.min(Math.min(above, row[j - 1]) + 1, diagonal + (p[j - 1] == c ? 0 : 1));
+                diagonal = above;
+            }
+            best = Math.min(best, row[p.length]);
+        }
+        return best;
+    }
+
+    @Test
+    public void testSearchPattern() {
+        Random random = new Random(53);
+        List<String> words = new ArrayList<>();
+        GeneralizedSuffixTree in = new GeneralizedSuffixTree();
+        for (int i = 0; i < 500; ++i) {
+            String word = randomWord(random, 1 + random.nextInt(10), 4) + (i % 13 == 0 ? "😀?" : "");
+            words.add(word);
+            in.put(word, i);
+        }
+        in.remove(5);
+
+        String[] parts = { "a", "b", "c", "ab", "?", "[ab]", "[^a]", "[b-d]", "\\?", "😀", "[😀c]" };
+        for (int i = 0; i < 500; ++i) {
+            StringBuilder pattern = new StringBuilder();
+            StringBuilder regex = new StringBuilder();
+            int length = 1 + random.nextInt(4);
+            for (int j = 0; j < length; ++j) {
+                String part = parts[random.nextInt(parts.length)];
+                pattern.append(part);
+                regex.append(part.equals("?") ? "." : part);
+            }
+            Pattern compiled = Pattern.compile(regex.toString(), Pattern.DOTALL);
+            Set<Integer> expected = new HashSet<>();
+            for (int j = 0; j < words.size(); ++j) {
+                if (j != 5 && compiled.matcher(words.get(j)).find()) {
+                    expected.add(j);
+                }
+            }
+            Collection<Integer> found = in.searchPattern(pattern.toString());
+            assertEquals(expected, Set.copyOf(found), () -> "wrong results for " + pattern);
+            assertEquals(expected.size(), found.size());
+            assertEquals(Math.min(3, expected.size()), in.searchPattern(pattern.toString(), 3).size());
+        }
+        assertEquals(Set.copyOf(in.search("abc")), Set.copyOf(in.searchPattern("abc")));
+        assertEmpty(in.searchPattern(""));
+        assertThrows(IllegalArgumentException.class, () -> in.searchPattern("a[bc"));
+        assertThrows(IllegalArgumentException.class, () -> in.searchPattern("ab\\"));
+        assertThrows(IllegalArgumentException.class, () -> in.searchPattern("[c-a]"));
+    }
+
+    @Test
+    public void testLongestCommonSubstring() {
+        Random random = new Random(59);
+        for (int t = 0; t < 40; ++t) {
+            List<String> words = new ArrayList<>();
+            GeneralizedSuffixTree in = new GeneralizedSuffixTree();
+            int count = 2 + random.nextInt(30);
+            for (int i = 0; i < count; ++i) {
+                String word = randomWord(random, random.nextInt(15), 3) + (i % 4 == 0 ? "😀" : "");
+                words.add(word);
+                // out of order every now and then
+                in.put(word, i % 3 == 0 ? count - i : i);
+            }
+            if (t % 2 == 0) {
+                in.remove(1);
+            }
+
+            // the distinct indexes containing each substring
+            Map<String, Set<Integer>> indexes = new HashMap<>();
+            for (int i = 0; i < count; ++i) {
+                int index = i % 3 == 0 ? count - i : i;
+                if (t % 2 == 0 && index == 1) {
+                    continue;
+                }
+                for (String s : getSubstrings(words.get(i))) {
+                    indexes.computeIfAbsent(s, k -> new HashSet<>()).add(index);
+                }
+            }
+            for (int k = 1; k <= 4; ++k) {
+                int minKeys = k;
+                int expected = indexes.entrySet().stream().filter(e -> e.getValue().size() >= minKeys)
+                        .mapToInt(e -> e.getKey().length()).max().orElse(0);
+                String found = in.longestCommonSubstring(minKeys);
+                assertEquals(expected, found.length(), () -> "wrong length for " + words + " and " + minKeys);
+                if (!found.isEmpty()) {
+                    assertTrue(indexes.get(found).size() >= minKeys, () -> found + " is not shared by " + minKeys);
+                }
+            }
+        }
+        assertEquals("anana", GeneralizedSuffixTree.bulkLoad(List.of("banana", "ananas", "cananas")).longestCommonSubstring(3));
+        assertThrows(IllegalArgumentException.class, () -> new GeneralizedSuffixTree().longestCommonSubstring(0));
+    }
+
+    @Test
+    public void testSearchCallback() {
+        GeneralizedSuffixTree in = new GeneralizedSuffixTree();
+        String[] words = new String[] { "banana", "bano", "ba", "ananas" };
+        for (int i = 0; i < words.length; ++i) {
+            in.put(words[i], i);
+        }
+
+        Set<Integer> found = new HashSet<>();
+        in.search("an", index -> assertTrue(found.add(index), () -> "index " + index + " reported twice"));
+        assertEquals(Set.of(0, 1, 3), found);
+
+        found.clear();
+        in.search("a", 2, found::add);
+        assertEquals(2, found.size());
+
+        in.search("xyz", index -> { throw new AssertionError("unexpected index " + index); });
+    }
+
+    @Test
+    public void testSearchIterator() {
+        GeneralizedSuffixTree in = new GeneralizedSuffixTree();
+        for (int i = 0; i < 200; ++i) {
+            in.put("key" + i, i);
+        }
+
+        Set<Integer> all = new HashSet<>();
+        PrimitiveIterator.OfInt it = in.searchIterator("key", -1);
+        while (it.hasNext()) {
+            assertTrue(all.add(it.nextInt()));
+        }
+        assertEquals(200, all.size());
+
+        for (int limit : new int[] { 0, 1, 10, 199, 200, 500 }) {
+            Set<Integer> limited = new HashSet<>();
+            in.searchIterator("e", limit).forEachRemaining((int index) -> assertTrue(limited.add(index)));
+            assertEquals(Math.min(limit, 200), limited.size());
+            assertTrue(all.containsAll(limited));
+        }
+
+        assertFalse(in.searchIterator("yek", -1).hasNext());
+        assertEquals(5, in.searchStream("1").limit(5).count());
+        assertEquals(3, in.search("key1", 3).size());
+    }
+
+    @Test
+    public void testSearchStream() {
+        GeneralizedSuffixTree in = new GeneralizedSuffixTree();
+        String[] words = new String[] { "banana", "bano", "ba", "ananas" };
+        for (int i = 0; i < words.length; ++i) {
+            in.put(words[i], i);
+        }
+
+        assertArrayEquals(new int[] { 0, 3 }, in.searchStream("nan").sorted().toArray());
+        assertEquals(4, in.searchStream("a").count());
+        assertEquals(0, in.searchStream("bab").count());
+    }
+
     /* testing a test method :) */
     @Test
     public void testGetSubstrings() {
@@ -324,4 +1151,11 @@ public class SuffixTreeTest {
         assertEquals(1, suffixTree.search("äm").size());
     }
 
+    private static String randomWord(Random random, int length, int alphabetSize) {
+        StringBuilder word = new StringBuilder();
+        for (int j = 0; j < length; ++j) {
+            word.append((char) ('a' + random.nextInt(alphabetSize)));
+        }
+        return word.toString();
+    }
 }